@@ -0,0 +1,131 @@
+package org.intellij.sonar.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * compares finding the files of components by the index, which parses the components in place, with the former index
+ * based on regular expressions, for the files of a maven like project. Run with {@code ./gradlew jmh
+ * -Pjmh.profilers=gc} to see the allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SonarComponentToFileIndexBenchmark {
+
+  private static final String RESOURCE_KEY = "org.example:shop";
+  private static final int FILES_COUNT = 10_000;
+  private static final int COMPONENTS_COUNT = 1_000;
+
+  private final List<String> components = new ArrayList<>();
+  private SonarComponentToFileIndex index;
+  private RegularExpressionIndex regularExpressionIndex;
+
+  @Setup
+  public void setUp() {
+    final List<String> filePaths = new ArrayList<>();
+    for (int i = 0; i < FILES_COUNT; i++) {
+      filePaths.add(filePath(i));
+    }
+    for (int i = 0; i < COMPONENTS_COUNT; i++) {
+      // every component of a file in the project, some in the formats of older SonarQube versions
+      final int file = i * (FILES_COUNT / COMPONENTS_COUNT);
+      if (i % 10 == 0) {
+        components.add(RESOURCE_KEY + ":[root]/build" + file + ".groovy");
+      } else if (i % 10 == 1) {
+        components.add(RESOURCE_KEY + ":org.example.shop.module" + file % 7 + ".Service" + file);
+      } else {
+        components.add(RESOURCE_KEY + ":" + relativePath(file));
+      }
+    }
+    index = new SonarComponentToFileIndex(RESOURCE_KEY, filePaths);
+    regularExpressionIndex = new RegularExpressionIndex(RESOURCE_KEY, filePaths);
+  }
+
+  private static String filePath(int i) {
+    return "/home/developer/projects/shop/" + relativePath(i);
+  }
+
+  private static String relativePath(int i) {
+    return "src/main/java/org/example/shop/module" + i % 7 + "/Service" + i + ".java";
+  }
+
+  @Benchmark
+  public int inPlace() {
+    int matches = 0;
+    for (String component : components) {
+      matches += index.findFiles(component).size();
+    }
+    return matches;
+  }
+
+  @Benchmark
+  public int regularExpressions() {
+    int matches = 0;
+    for (String component : components) {
+      matches += regularExpressionIndex.findFiles(component).size();
+    }
+    return matches;
+  }
+
+  /**
+   * the index as it was before parsing the components in place
+   */
+  private static class RegularExpressionIndex {
+
+    private final String resourceKeyFromConfiguration;
+    private final NavigableSet<String> reversedFilePaths = new TreeSet<>();
+
+    RegularExpressionIndex(String resourceKeyFromConfiguration, Collection<String> fullFilePathsFromLocalFileSystem) {
+      this.resourceKeyFromConfiguration = resourceKeyFromConfiguration;
+      for (String fullFilePath : fullFilePathsFromLocalFileSystem) {
+        reversedFilePaths.add(reverse(fullFilePath));
+      }
+    }
+
+    Set<String> findFiles(String componentFrom) {
+      final Set<String> files = new LinkedHashSet<>();
+      if (!componentFrom.startsWith(resourceKeyFromConfiguration)) {
+        return files;
+      }
+      final String fileKeyFromComponent = componentFrom.replace(resourceKeyFromConfiguration + ":", "");
+      addFilesEndingWith(fileKeyFromComponent, files);
+      final String normalizedFileKey = fileKeyFromComponent.replaceAll("\\[.+\\]", "");
+      addFilesEndingWith(normalizedFileKey, files);
+      addFilesEndingWith(normalizedFileKey.replaceAll("\\.", "/") + ".java", files);
+      return files;
+    }
+
+    private void addFilesEndingWith(String suffix, Set<String> files) {
+      final String reversedSuffix = reverse(suffix);
+      for (String reversedFilePath : reversedFilePaths.subSet(
+          reversedSuffix, true, reversedSuffix + Character.MAX_VALUE, false
+      )) {
+        files.add(reverse(reversedFilePath));
+      }
+    }
+
+    private static String reverse(String s) {
+      return new StringBuilder(s).reverse().toString();
+    }
+  }
+}
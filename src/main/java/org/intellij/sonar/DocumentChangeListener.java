@@ -1,14 +1,11 @@
 package org.intellij.sonar;
 
-import com.google.common.collect.Sets;
 import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.editor.Document;
-import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.editor.EditorFactory;
 import com.intellij.openapi.editor.event.DocumentEvent;
 import com.intellij.openapi.editor.event.DocumentListener;
-import com.intellij.openapi.editor.markup.RangeHighlighter;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.project.ProjectManagerListener;
@@ -16,21 +13,19 @@ import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
 import com.intellij.testFramework.LightVirtualFile;
-import java.util.List;
-import java.util.Map;
+import java.util.LinkedHashSet;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.CopyOnWriteArraySet;
-import org.intellij.sonar.analysis.SonarExternalAnnotator;
+import org.intellij.sonar.index.FileIssues;
+import org.intellij.sonar.index.IssuePositions;
+import org.intellij.sonar.index.IssuesByFileIndex;
 import org.intellij.sonar.index.SonarIssue;
 import org.intellij.sonar.persistence.IssuesByFileIndexProjectService;
-import org.intellij.sonar.util.Finders;
 import org.jetbrains.annotations.NotNull;
 
 public class DocumentChangeListener
     implements ProjectManagerListener {
 
-  public static final Set<VirtualFile> CHANGED_FILES = new CopyOnWriteArraySet<>();
   private final Project myProject;
 
   public DocumentChangeListener(Project project) {
@@ -41,116 +36,64 @@ public class DocumentChangeListener
         .addDocumentListener(new DocumentListener() {
           @Override
           public void documentChanged(@NotNull DocumentEvent e) {
-            rememberChangedFile(e);
             updateIssuesPositions(e, myProject);
           }
         }, () -> {
         });
   }
 
+  /**
+   * keeps where the issues of the files still open moved to, as their markers go with the project
+   */
   @Override
-  public void projectOpened(@NotNull Project project) {
-    CHANGED_FILES.clear();
-  }
-
-  @Override
-  public void projectClosed(@NotNull Project project) {
-    CHANGED_FILES.clear();
-  }
-
-  private void rememberChangedFile(final DocumentEvent e) {
-    ApplicationManager.getApplication().invokeLater(
-        () -> ApplicationManager.getApplication().runReadAction(
-            () -> addFileFromEventToChangedFiles(e)
-        )
-    );
-  }
-
-  private void addFileFromEventToChangedFiles(DocumentEvent e) {
-    FileDocumentManager fdm = FileDocumentManager.getInstance();
-    final Optional<VirtualFile> file = Optional.ofNullable(fdm.getFile(e.getDocument()));
-    file.ifPresent(CHANGED_FILES::add);
+  public void projectClosing(@NotNull Project project) {
+    if (project == myProject) {
+      IssuesByFileIndex.keepPositionsOf(project, IssuePositions.getInstance(project).getTrackedPaths());
+    }
   }
 
+  /**
+   * the lines of the issues move with the range markers of the document by themselves, only the issues whose text was
+   * deleted are removed, once per change of the document however many editors show it
+   */
   private void updateIssuesPositions(final DocumentEvent documentEvent, final Project project) {
     final Document document = documentEvent.getDocument();
-    final List<Editor> editors = Finders.findEditorsFrom(document);
-    for (final Editor editor : editors) {
-      ApplicationManager.getApplication().invokeLater(
-          () -> {
-            updateIssueLines(document, editor);
-            final Optional<VirtualFile> file = removeIssuesDeletedInEditor(documentEvent, project);
-            file.ifPresent(it -> updateHighlightingFor(it, project));
-          }
-      );
-    }
+    ApplicationManager.getApplication().invokeLater(
+        () -> {
+          final Optional<VirtualFile> file = removeIssuesDeletedInEditor(document, project);
+          file.ifPresent(it -> updateHighlightingFor(it, project));
+        }
+    );
   }
 
   /**
-   * updates the line number of issues, if they are moved in the editor
+   * removes the issues whose text was deleted in the editor from the issues index
    *
    * @param document changed
-   * @param editor   containing the document
+   * @param project  the document belongs to
+   * @return the file of the document, if issues were removed from it
    */
-  private void updateIssueLines(Document document, Editor editor) {
-    Set<RangeHighlighter> allHighlighters = Finders.findAllRangeHighlightersFrom(document);
-    for (RangeHighlighter rh : allHighlighters) {
-      updateLineForAllIssuesFrom(editor, rh);
-    }
-  }
-
-  private void updateLineForAllIssuesFrom(Editor editor, RangeHighlighter highlighter) {
-    Optional<Set<SonarIssue>> issues = Optional.ofNullable(highlighter.getUserData(SonarExternalAnnotator.KEY));
-    if (issues.isEmpty()) {
-      return;
+  private Optional<VirtualFile> removeIssuesDeletedInEditor(Document document, Project project) {
+    final Optional<VirtualFile> file = Optional.ofNullable(FileDocumentManager.getInstance().getFile(document));
+    if (file.isEmpty() || project.isDisposed()) {
+      return Optional.empty();
     }
-    int ijLine = Finders.findLineOfRangeHighlighter(highlighter, editor);
-    int rhLine = ijLine + 1;
-    for (SonarIssue issue : issues.get()) {
-      if (issue.getLine() == null) {
-        continue;
-      }
-      if (issue.getLine() != rhLine) {
-        issue.setLine(rhLine);
-      }
+    final String path = file.get().getPath();
+    final Set<SonarIssue> deletedIssues = IssuePositions.getInstance(project).removeDeleted(path);
+    if (deletedIssues.isEmpty()) {
+      return Optional.empty();
     }
-  }
-
-  /**
-   * removes issues without highlighter (highlighter was removed in editor) by iterating over all issues from remaining highlighters and
-   * updating the issues index
-   *
-   * @param documentEvent triggered the change of the document
-   * @param project       the document belongs to
-   */
-  private Optional<VirtualFile> removeIssuesDeletedInEditor(DocumentEvent documentEvent, Project project) {
-    FileDocumentManager fdm = FileDocumentManager.getInstance();
-    final Optional<VirtualFile> file = Optional.ofNullable(fdm.getFile(
-        documentEvent.getDocument()
-    ));
-    if (file.isPresent()) {
-      Set<SonarIssue> issuesFromHighlighters = Sets.newLinkedHashSet();
-      Set<RangeHighlighter> highlighters = Finders.findAllRangeHighlightersFrom(documentEvent.getDocument());
-      retrieveIssuesFromHighlighters(issuesFromHighlighters, highlighters);
-      final Optional<IssuesByFileIndexProjectService> indexService =
-          IssuesByFileIndexProjectService.getInstance(project);
-      if (indexService.isPresent()) {
-        final Map<String, Set<SonarIssue>> index = indexService.get().getIndex();
-        index.put(file.get().getPath(), issuesFromHighlighters);
+    IssuesByFileIndexProjectService.getInstance(project).ifPresent(indexService -> indexService.update(index -> {
+      final Set<SonarIssue> issues = index.get(path);
+      if (issues != null) {
+        final Set<SonarIssue> remainingIssues = new LinkedHashSet<>(issues);
+        remainingIssues.removeAll(deletedIssues);
+        index.put(path, FileIssues.of(remainingIssues));
       }
-    }
+    }));
     return file;
   }
 
-  private void retrieveIssuesFromHighlighters(
-      Set<SonarIssue> issuesFromHighlighters,
-      Set<RangeHighlighter> highlighters) {
-    for (RangeHighlighter rh : highlighters) {
-      Optional<Set<SonarIssue>> issuesFromHighlighter = Optional.ofNullable(rh.getUserData(SonarExternalAnnotator.KEY));
-      issuesFromHighlighter.ifPresent(issuesFromHighlighters::addAll);
-    }
-  }
-
   private void updateHighlightingFor(VirtualFile virtualFile, Project project) {
     if (virtualFile.isValid() && !project.isDisposed() && project.isInitialized()) {
       PsiManager pm = PsiManager.getInstance(project);
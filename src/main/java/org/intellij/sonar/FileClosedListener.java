@@ -0,0 +1,29 @@
+package org.intellij.sonar;
+
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.fileEditor.FileEditorManagerListener;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.Collections;
+import org.intellij.sonar.index.IssuesByFileIndex;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * writes where the issues of a file moved to back to the index once its last editor is closed and forgets their range
+ * markers, which releases its document
+ */
+public class FileClosedListener implements FileEditorManagerListener {
+
+  private final Project myProject;
+
+  public FileClosedListener(Project project) {
+    myProject = project;
+  }
+
+  @Override
+  public void fileClosed(@NotNull FileEditorManager source, @NotNull VirtualFile file) {
+    if (!myProject.isDisposed() && !source.isFileOpen(file)) {
+      IssuesByFileIndex.keepPositionsOf(myProject, Collections.singleton(file.getPath()));
+    }
+  }
+}
@@ -0,0 +1,124 @@
+package org.intellij.sonar;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileCopyEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileCreateEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileDeleteEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import org.intellij.sonar.persistence.IssuesByFileIndexProjectService;
+import org.intellij.sonar.persistence.ResolvedComponentsProjectService;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * marks the files created, copied, moved or renamed in the project as unsynced, as the issues downloaded up to the sync
+ * marks miss theirs, and hands the added and removed paths to the resolved components. A directory with files drops
+ * the sync marks and all resolved components instead, so that the next download is a full one.
+ */
+public class ProjectFilesChangeListener implements BulkFileListener {
+
+  private final Project myProject;
+
+  public ProjectFilesChangeListener(Project project) {
+    myProject = project;
+  }
+
+  /**
+   * takes the paths of the deleted files while they are still valid
+   */
+  @Override
+  public void before(@NotNull List<? extends VFileEvent> events) {
+    if (myProject.isDisposed()) {
+      return;
+    }
+    final ProjectFileIndex fileIndex = ProjectFileIndex.getInstance(myProject);
+    final List<String> deletedPaths = new ArrayList<>();
+    for (VFileEvent event : events) {
+      final VirtualFile file = event instanceof VFileDeleteEvent ? event.getFile() : null;
+      if (file != null && file.isValid() && fileIndex.isInContent(file)) {
+        deletedPaths.add(file.getPath());
+      }
+    }
+    if (!deletedPaths.isEmpty()) {
+      ResolvedComponentsProjectService.getInstance(myProject)
+          .ifPresent(service -> service.filesChanged(Collections.emptyList(), deletedPaths));
+    }
+  }
+
+  @Override
+  public void after(@NotNull List<? extends VFileEvent> events) {
+    if (myProject.isDisposed()) {
+      return;
+    }
+    final ProjectFileIndex fileIndex = ProjectFileIndex.getInstance(myProject);
+    final List<String> addedPaths = new ArrayList<>();
+    final List<String> removedPaths = new ArrayList<>();
+    boolean directoryAdded = false;
+    for (VFileEvent event : events) {
+      getRemovedPath(event).ifPresent(removedPaths::add);
+      final VirtualFile file = getAddedFile(event);
+      if (file == null || !file.isValid() || !fileIndex.isInContent(file)) {
+        continue;
+      }
+      if (!file.isDirectory()) {
+        addedPaths.add(file.getPath());
+      } else if (file.getChildren().length > 0) {
+        directoryAdded = true;
+      }
+    }
+    if (directoryAdded) {
+      IssuesByFileIndexProjectService.getInstance(myProject).ifPresent(IssuesByFileIndexProjectService::dropSyncMarks);
+      ResolvedComponentsProjectService.getInstance(myProject).ifPresent(ResolvedComponentsProjectService::clear);
+      return;
+    }
+    if (!addedPaths.isEmpty()) {
+      IssuesByFileIndexProjectService.getInstance(myProject)
+          .ifPresent(indexService -> indexService.markUnsynced(addedPaths));
+    }
+    if (!addedPaths.isEmpty() || !removedPaths.isEmpty()) {
+      ResolvedComponentsProjectService.getInstance(myProject)
+          .ifPresent(service -> service.filesChanged(addedPaths, removedPaths));
+    }
+  }
+
+  /**
+   * @return the file at the new path, if the event adds one
+   */
+  @Nullable
+  private static VirtualFile getAddedFile(VFileEvent event) {
+    if (event instanceof VFileCreateEvent || event instanceof VFileMoveEvent || isRename(event)) {
+      return event.getFile();
+    }
+    if (event instanceof VFileCopyEvent) {
+      return ((VFileCopyEvent) event).findCreatedFile();
+    }
+    return null;
+  }
+
+  /**
+   * @return the former path of a moved or renamed file or directory
+   */
+  private static Optional<String> getRemovedPath(VFileEvent event) {
+    if (event instanceof VFileMoveEvent) {
+      return Optional.of(((VFileMoveEvent) event).getOldPath());
+    }
+    if (isRename(event)) {
+      return Optional.of(((VFilePropertyChangeEvent) event).getOldPath());
+    }
+    return Optional.empty();
+  }
+
+  private static boolean isRename(VFileEvent event) {
+    return event instanceof VFilePropertyChangeEvent
+        && VirtualFile.PROP_NAME.equals(((VFilePropertyChangeEvent) event).getPropertyName());
+  }
+}
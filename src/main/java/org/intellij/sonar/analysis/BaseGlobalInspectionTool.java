@@ -10,9 +10,10 @@ import com.intellij.codeInspection.ProblemsHolder;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.psi.PsiFile;
 import java.util.Set;
+import org.intellij.sonar.index.IssuePositions;
 import org.intellij.sonar.index.IssuesByFileIndex;
 import org.intellij.sonar.index.SonarIssue;
-import org.intellij.sonar.util.Finders;
+import org.intellij.sonar.util.LineRanges;
 import org.jetbrains.annotations.Nls;
 import org.jetbrains.annotations.NotNull;
 
@@ -27,12 +28,15 @@ public abstract class BaseGlobalInspectionTool extends GlobalSimpleInspectionToo
       @NotNull final ProblemDescriptionsProcessor problemDescriptionsProcessor
   ) {
     Set<SonarIssue> issues = IssuesByFileIndex.getIssuesForFile(psiFile);
+    final LineRanges lineRanges = LineRanges.of(psiFile);
     for (final SonarIssue issue : issues) {
       if (!processIssue(issue)) {
         continue;
       }
       final ProblemHighlightType severity = SonarToIjSeverityMapping.toProblemHighlightType(issue.getSeverity());
-      final TextRange textRange = Finders.getLineRange(psiFile, issue.getLine());
+      final TextRange textRange = lineRanges.getDocument()
+          .flatMap(document -> IssuePositions.getTextRange(psiFile, document, issue))
+          .orElseGet(() -> lineRanges.getLineRange(IssuePositions.getLine(psiFile, issue)));
       final ProblemDescriptor problemDescriptor = problemsHolder.getManager().createProblemDescriptor(
           psiFile, textRange, issue.formattedMessage() + " " + issue.getRuleKey(), severity, false
       );
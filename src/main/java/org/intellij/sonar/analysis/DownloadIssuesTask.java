@@ -1,40 +1,83 @@
 package org.intellij.sonar.analysis;
 
 import com.google.common.base.MoreObjects;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
 import com.intellij.notification.Notification;
 import com.intellij.notification.NotificationType;
 import com.intellij.notification.Notifications;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.registry.Registry;
 import com.intellij.psi.PsiFile;
-import java.util.AbstractCollection;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
 import java.util.stream.Collectors;
 import org.intellij.sonar.console.SonarConsole;
+import org.intellij.sonar.index.IssuesByFileIndex;
 import org.intellij.sonar.index.IssuesByFileIndexer;
 import org.intellij.sonar.index.SonarIssue;
 import org.intellij.sonar.persistence.IssuesByFileIndexProjectService;
+import org.intellij.sonar.persistence.IssuesSyncMark;
+import org.intellij.sonar.persistence.ResolvedComponentsProjectService;
 import org.intellij.sonar.persistence.Resource;
 import org.intellij.sonar.persistence.Settings;
 import org.intellij.sonar.persistence.SonarServerConfig;
 import org.intellij.sonar.persistence.SonarServers;
+import org.intellij.sonar.sonarserver.IssuesDownloadProgress;
+import org.intellij.sonar.sonarserver.SonarDates;
 import org.intellij.sonar.sonarserver.SonarServer;
 import org.intellij.sonar.util.DurationUtil;
+import org.intellij.sonar.util.ProgressIndicatorUtil;
+import org.intellij.sonar.util.SonarComponentKeys;
 import org.sonarqube.ws.Issues.Issue;
 
 public class DownloadIssuesTask implements Runnable {
 
+  private static final String DOWNLOAD_PARALLELISM_REGISTRY_KEY = "sonar.resources.download.parallelism";
+  private static final int DEFAULT_DOWNLOAD_PARALLELISM = 4;
+  private static final int INDEXING_QUEUE_CAPACITY = 8;
+  private static final long QUEUE_POLL_INTERVAL_IN_MILLISECONDS = 100;
+  private static final int MAX_FILES_FOR_LIMITED_DOWNLOAD = 200;
+
   private final SonarServerConfig sonarServerConfig;
   private final Set<String> resourceKeys;
   private final List<PsiFile> psiFiles;
-  private final Map<String, ImmutableList<Issue>> downloadedIssuesByResourceKey = Maps.newConcurrentMap();
+  private final List<PsiFile> unsyncedFiles;
+  private final BlockingQueue<IssuesBatch> indexingQueue = new ArrayBlockingQueue<>(INDEXING_QUEUE_CAPACITY);
+  private final Map<String, String> syncDateByResourceKey = Maps.newConcurrentMap();
+  private final Map<String, ImmutableList<Issue>> changedIssuesByResourceKey = new HashMap<>();
+  private final Map<String, Set<String>> unsyncedComponentKeysByResourceKey = new HashMap<>();
+  private final Map<String, Integer> indexedIssuesCountByResourceKey = new HashMap<>();
+  private final AtomicLong downloadedIssuesCount = new AtomicLong(0);
   private final SonarQubeInspectionContext.EnrichedSettings enrichedSettings;
   private final SonarConsole sonarConsole;
+  private final IssuesByFileIndexer indexer;
+  private boolean incrementalSync;
+  private boolean recordSyncMarks;
+  private boolean limitDownloadToFiles;
+  private String fingerprint;
+  private int downloadedResourcesCount;
 
   private DownloadIssuesTask(Project project,
       SonarQubeInspectionContext.EnrichedSettings enrichedSettings,
@@ -45,7 +88,12 @@ public class DownloadIssuesTask implements Runnable {
     this.sonarServerConfig = sonarServerConfig;
     this.resourceKeys = resourceKeys;
     this.psiFiles = psiFiles;
+    // taken before any download of the inspection marks files as unsynced or synced
+    this.unsyncedFiles = IssuesByFileIndex.getUnsyncedFiles(psiFiles);
     this.sonarConsole = SonarConsole.get(project);
+    this.indexer = new IssuesByFileIndexer(psiFiles)
+        .withSonarConsole(sonarConsole)
+        .withProgressReporting(false);
   }
 
   public static Optional<DownloadIssuesTask> from(Project project,
@@ -54,74 +102,428 @@ public class DownloadIssuesTask implements Runnable {
     return new DownloadIssuesTaskBuilder().buildFrom(project, enrichedSettings, psiFiles).maybeGetDownloadIssuesTask();
   }
 
+  /**
+   * merge the issues changed since the sync mark of each resource into the index, along with all issues of the files
+   * whose downloaded issues were replaced since. The changed issues are to be downloaded before, see
+   * {@link #downloadChangedIssues()}.
+   */
+  public DownloadIssuesTask withIncrementalSync(boolean incrementalSync) {
+    this.incrementalSync = incrementalSync;
+    return this;
+  }
+
+  /**
+   * remember the latest update date of the issues of each resource when the download started as its sync mark, which
+   * should only be done if the issues were indexed for all files of the project
+   */
+  public DownloadIssuesTask withSyncMarksRecording(boolean recordSyncMarks) {
+    this.recordSyncMarks = recordSyncMarks;
+    return this;
+  }
+
+  /**
+   * download only the issues of the files to index instead of all issues of the resources, if there are just a few
+   */
+  public DownloadIssuesTask withDownloadLimitedToFiles(boolean limitDownloadToFiles) {
+    this.limitDownloadToFiles = limitDownloadToFiles;
+    return this;
+  }
+
+  /**
+   * @return true if the index holds the issues of all resources up to a sync mark, downloaded by the same query, and
+   * few enough files with known component keys need all their issues downloaded again
+   */
+  public boolean canSyncIncrementally() {
+    final Map<String, IssuesSyncMark> syncMarks = IssuesByFileIndexProjectService.getInstance(enrichedSettings.project)
+        .map(IssuesByFileIndexProjectService::getSyncMarks)
+        .orElse(Collections.emptyMap());
+    final boolean synced = !resourceKeys.isEmpty()
+        && unsyncedFiles.size() <= MAX_FILES_FOR_LIMITED_DOWNLOAD
+        && resourceKeys.stream()
+        .map(syncMarks::get)
+        .allMatch(mark -> mark != null
+            && getFingerprint().equals(mark.getFingerprint())
+            && mark.getLastUpdateDate() != null);
+    if (!synced) {
+      return false;
+    }
+    for (String resourceKey : resourceKeys) {
+      final Optional<Set<String>> componentKeys = getComponentKeysFor(resourceKey, unsyncedFiles);
+      if (!componentKeys.isPresent()) {
+        sonarConsole.info(String.format(
+            "The component keys of files to download issues for are unknown for SonarQube resource %s, "
+                + "downloading all issues instead",
+            resourceKey
+        ));
+        return false;
+      }
+      unsyncedComponentKeysByResourceKey.put(resourceKey, componentKeys.get());
+    }
+    return true;
+  }
+
+  /**
+   * @return the fingerprint of the settings the issues are queried by. Files added to the project since the sync marks
+   * are marked unsynced when they come in, so the files are not part of it.
+   */
+  private String getFingerprint() {
+    if (fingerprint == null) {
+      fingerprint = String.format("%08x", Objects.hash(
+          sonarServerConfig.getHostUrl(),
+          sonarServerConfig.getOrganization(),
+          sonarServerConfig.getExtParams(),
+          enrichedSettings.settings.getExtParams()
+      ));
+    }
+    return fingerprint;
+  }
+
+  /**
+   * downloads the issues changed since the sync mark of each resource for an incremental sync, after the latest
+   * update date of its issues, so that no issue changing meanwhile is missed. The index is to be cleared for the
+   * unsynced files only afterwards, as the issues of all files have to be downloaded again if too many issues changed.
+   *
+   * @return false if the changed issues of a resource could not be downloaded
+   */
+  public boolean downloadChangedIssues() {
+    final SonarServer sonarServer = SonarServer.create(sonarServerConfig);
+    final ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
+    final CombinedDownloadProgress progress = new CombinedDownloadProgress(indicator, resourceKeys.size());
+    for (String resourceKey : resourceKeys) {
+      final boolean downloaded = tryDownloadingChangedIssues(
+          sonarServer, resourceKey, progress.forResource(resourceKey)
+      );
+      // the changed issues downloaded until the download was canceled are incomplete
+      if (!downloaded || progress.isCanceled()) {
+        return false;
+      }
+      progress.finished(resourceKey);
+    }
+    return true;
+  }
+
+  /**
+   * downloads the issues of all resources in parallel and indexes every page on the calling thread as soon as it
+   * arrives. The downloads block while the bounded indexing queue is full, so only a few pages are held in memory no
+   * matter how many issues the resources have.
+   */
   @Override
   public void run() {
     final SonarServer sonarServer = SonarServer.create(sonarServerConfig);
     final long startTime = System.currentTimeMillis();
+    final ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
+    final CombinedDownloadProgress progress = new CombinedDownloadProgress(indicator, resourceKeys.size());
+    final ExecutorService executor = AppExecutorUtil.createBoundedApplicationPoolExecutor(
+        "SonarQube Resources Download", getDownloadParallelism()
+    );
+    // sync marks are recorded by runs over all files of the project only
+    indexer.withAllProjectFiles(recordSyncMarks);
+    final List<Future<?>> futures = new ArrayList<>(resourceKeys.size());
     for (String resourceKey : resourceKeys) {
-      final String downloadingIssuesMessage = String.format("Downloading issues for SonarQube resource %s", resourceKey);
-      sonarConsole.info(downloadingIssuesMessage);
-      tryDownloadingIssues(sonarServer, resourceKey);
+      // the files are looked up here, as the download threads have no read access
+      final Optional<Set<String>> componentKeys = getComponentKeysFor(resourceKey);
+      final Set<String> unsyncedComponentKeys = incrementalSync
+          ? unsyncedComponentKeysByResourceKey.getOrDefault(resourceKey, Collections.emptySet())
+          : Collections.emptySet();
+      futures.add(executor.submit(() -> {
+        final boolean downloaded = tryDownloadingIssues(
+            sonarServer, resourceKey, componentKeys, unsyncedComponentKeys, progress.forResource(resourceKey),
+            progress::isCanceled
+        );
+        progress.finished(resourceKey);
+        enqueue(IssuesBatch.endOf(resourceKey, downloaded), progress::isCanceled);
+      }));
+    }
+    final boolean allResourcesFinished;
+    try {
+      allResourcesFinished = indexIssuesUntilAllResourcesFinished(progress::isCanceled);
+    } finally {
+      futures.forEach(future -> future.cancel(true));
+      executor.shutdown();
     }
-    onSuccess(startTime);
+    IssuesByFileIndexProjectService.getInstance(enrichedSettings.project)
+        .ifPresent(indexService -> markSynced(indexService, allResourcesFinished));
+    sonarConsole.info(
+        String.format(
+            "Downloaded and indexed %d issues in %s",
+            downloadedIssuesCount.get(),
+            DurationUtil.getDurationBreakdown(System.currentTimeMillis() - startTime)
+        )
+    );
+  }
+
+  private void markSynced(IssuesByFileIndexProjectService indexService, boolean allResourcesFinished) {
+    if (recordSyncMarks && allResourcesFinished) {
+      // the index holds the issues of all files up to the sync marks, resources without one are downloaded in full
+      indexService.markAllSynced();
+    } else if (downloadedResourcesCount == resourceKeys.size()) {
+      // the issues of the files were downloaded again from all resources
+      indexService.markSynced(
+          (incrementalSync ? unsyncedFiles : psiFiles).stream()
+              .map(psiFile -> psiFile.getVirtualFile().getPath())
+              .collect(Collectors.toList())
+      );
+    }
+  }
+
+  private static int getDownloadParallelism() {
+    return Math.max(1, Registry.intValue(DOWNLOAD_PARALLELISM_REGISTRY_KEY, DEFAULT_DOWNLOAD_PARALLELISM));
   }
 
-  private void tryDownloadingIssues(SonarServer sonarServer, String resourceKey) {
-    ImmutableList<Issue> issues;
+  /**
+   * @param componentKeys the keys of the files to download the issues of, none if no file belongs to the resource,
+   * empty for all issues of the resource
+   * @param unsyncedComponentKeys the keys of the files to download all issues for along with the changed issues
+   * @return true if all issues of the resource were handed to the indexing queue
+   */
+  private boolean tryDownloadingIssues(
+      SonarServer sonarServer,
+      String resourceKey,
+      Optional<Set<String>> componentKeys,
+      Set<String> unsyncedComponentKeys,
+      IssuesDownloadProgress progress,
+      BooleanSupplier isCanceled
+  ) {
     try {
-      issues = sonarServer.getAllIssuesFor(resourceKey, sonarServerConfig.getOrganization(), enrichedSettings);
-      downloadedIssuesByResourceKey.put(resourceKey, issues);
+      if (recordSyncMarks && !syncDateByResourceKey.containsKey(resourceKey)) {
+        recordSyncDate(sonarServer, resourceKey);
+      }
+      if (incrementalSync) {
+        enqueue(IssuesBatch.of(resourceKey, changedIssuesByResourceKey.get(resourceKey)), isCanceled);
+        if (!unsyncedComponentKeys.isEmpty()) {
+          sonarConsole.info(String.format(
+              "Downloading issues of %d files for SonarQube resource %s", unsyncedComponentKeys.size(), resourceKey
+          ));
+          sonarServer.downloadAllIssuesFor(
+              resourceKey, sonarServerConfig.getOrganization(), enrichedSettings, unsyncedComponentKeys, progress,
+              pageIssues -> enqueue(IssuesBatch.of(resourceKey, pageIssues), isCanceled)
+          );
+        }
+      } else if (!componentKeys.map(Set::isEmpty).orElse(false)) {
+        final String downloadingIssuesMessage = String.format("Downloading issues for SonarQube resource %s", resourceKey);
+        sonarConsole.info(downloadingIssuesMessage);
+        sonarServer.downloadAllIssuesFor(
+            resourceKey, sonarServerConfig.getOrganization(), enrichedSettings,
+            componentKeys.orElse(Collections.emptySet()), progress,
+            pageIssues -> enqueue(IssuesBatch.of(resourceKey, pageIssues), isCanceled)
+        );
+      }
+      return true;
     } catch (Exception e) {
-      sonarConsole.error(e.getMessage());
+      sonarConsole.error(String.format("Downloading issues for SonarQube resource %s failed: %s", resourceKey, e.getMessage()));
       Notifications.Bus.notify(
           new Notification(
               "SonarQube", "SonarQube",
-              "Downloading sonar issues failed!", NotificationType.ERROR
+              String.format("Downloading sonar issues for %s failed!", resourceKey), NotificationType.ERROR
           ), enrichedSettings.project
       );
+      return false;
+    }
+  }
+
+  /**
+   * @return the component keys of the files of the resource, none if no file belongs to it, or empty to download the
+   * issues of the whole resource
+   */
+  private Optional<Set<String>> getComponentKeysFor(String resourceKey) {
+    if (!limitDownloadToFiles || psiFiles.size() > MAX_FILES_FOR_LIMITED_DOWNLOAD) {
+      return Optional.empty();
+    }
+    final Optional<Set<String>> componentKeys = getComponentKeysFor(resourceKey, psiFiles);
+    if (!componentKeys.isPresent()) {
+      sonarConsole.info(String.format(
+          "The component keys of the files are unknown for SonarQube resource %s, downloading all its issues",
+          resourceKey
+      ));
+    }
+    return componentKeys;
+  }
+
+  /**
+   * derives the component keys of the files of the resource from the keys of the components resolved to files before,
+   * as the keys depend on the base dir of the analysis, on modules and on the version of the server
+   *
+   * @return the component keys, empty if the key of a file is unknown
+   */
+  private Optional<Set<String>> getComponentKeysFor(String resourceKey, List<PsiFile> files) {
+    final Map<String, String> keyPrefixByPathPrefix = ResolvedComponentsProjectService
+        .getInstance(enrichedSettings.project)
+        .map(service -> service.getResolvedComponents(resourceKey).getKeyPrefixByPathPrefix())
+        .orElse(Collections.emptyMap());
+    final Set<String> componentKeys = new LinkedHashSet<>();
+    for (PsiFile psiFile : files) {
+      if (!belongsTo(psiFile, resourceKey)) {
+        continue;
+      }
+      final Optional<String> componentKey = SonarComponentKeys.componentKeyOf(
+          psiFile.getVirtualFile().getPath(), keyPrefixByPathPrefix
+      );
+      if (!componentKey.isPresent()) {
+        return Optional.empty();
+      }
+      componentKeys.add(componentKey.get());
     }
+    return Optional.of(componentKeys);
+  }
+
+  private static boolean belongsTo(PsiFile psiFile, String resourceKey) {
+    return Optional.ofNullable(ReadAction.compute(() -> Settings.getSettingsFor(psiFile)))
+        .map(Settings::getResources)
+        .map(resources -> resources.stream().anyMatch(resource -> resourceKey.equals(resource.getKey())))
+        .orElse(false);
   }
 
-  private void onSuccess(long downloadStartTime) {
-    final long downloadedIssuesCount = downloadedIssuesByResourceKey.values().stream()
-        .mapToLong(AbstractCollection::size)
+  private void recordSyncDate(SonarServer sonarServer, String resourceKey) {
+    sonarServer.getLastUpdateDate(resourceKey, sonarServerConfig.getOrganization(), enrichedSettings)
+        .ifPresent(syncDate -> syncDateByResourceKey.put(resourceKey, syncDate));
+  }
+
+  /**
+   * @return false if too many issues of the resource changed or the download failed, in which case all issues of all
+   * resources are downloaded instead
+   */
+  private boolean tryDownloadingChangedIssues(
+      SonarServer sonarServer,
+      String resourceKey,
+      IssuesDownloadProgress progress
+  ) {
+    final String lastUpdateDate = getSyncMark(resourceKey).map(IssuesSyncMark::getLastUpdateDate).orElse(null);
+    try {
+      recordSyncDate(sonarServer, resourceKey);
+      sonarConsole.info(
+          String.format("Downloading issues changed since %s for SonarQube resource %s", lastUpdateDate, resourceKey)
+      );
+      final Optional<ImmutableList<Issue>> changedIssues = sonarServer.getIssuesChangedSince(
+          resourceKey, sonarServerConfig.getOrganization(), enrichedSettings, lastUpdateDate, progress
+      );
+      if (!changedIssues.isPresent()) {
+        sonarConsole.info(String.format(
+            "Too many issues changed since %s for SonarQube resource %s, downloading all issues instead",
+            lastUpdateDate, resourceKey
+        ));
+        return false;
+      }
+      changedIssuesByResourceKey.put(resourceKey, changedIssues.get());
+      return true;
+    } catch (Exception e) {
+      sonarConsole.info(String.format(
+          "Downloading the issues changed for SonarQube resource %s failed, downloading all issues instead: %s",
+          resourceKey, e.getMessage()
+      ));
+      return false;
+    }
+  }
+
+  private Optional<IssuesSyncMark> getSyncMark(String resourceKey) {
+    return IssuesByFileIndexProjectService.getInstance(enrichedSettings.project)
+        .map(indexService -> indexService.getSyncMarks().get(resourceKey));
+  }
+
+  /**
+   * blocks while the indexing queue is full. Batches are dropped once the download is canceled, as nobody takes them
+   * from the queue anymore.
+   */
+  private void enqueue(IssuesBatch batch, BooleanSupplier isCanceled) {
+    try {
+      while (!isCanceled.getAsBoolean()) {
+        if (indexingQueue.offer(batch, QUEUE_POLL_INTERVAL_IN_MILLISECONDS, TimeUnit.MILLISECONDS)) {
+          return;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * @return false if the indexing was canceled before all resources finished
+   */
+  private boolean indexIssuesUntilAllResourcesFinished(BooleanSupplier isCanceled) {
+    int finishedResourcesCount = 0;
+    try {
+      while (finishedResourcesCount < resourceKeys.size() && !isCanceled.getAsBoolean()) {
+        final IssuesBatch batch = indexingQueue.poll(QUEUE_POLL_INTERVAL_IN_MILLISECONDS, TimeUnit.MILLISECONDS);
+        if (batch == null) {
+          continue;
+        }
+        if (batch.isEndOfResource()) {
+          finishedResourcesCount++;
+          finishIndexFor(batch);
+        } else {
+          index(batch);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return finishedResourcesCount == resourceKeys.size();
+  }
+
+  private void index(IssuesBatch batch) {
+    downloadedIssuesCount.addAndGet(batch.issues.size());
+    final List<Issue> unresolvedIssues = batch.issues.stream()
+        .filter(DownloadIssuesTask::isUnresolved)
+        .collect(Collectors.toList());
+    final Map<String, Set<SonarIssue>> index = indexer
+        .withSonarServerIssues(unresolvedIssues)
+        .create();
+    // resolved issues are dropped. Changed issues replace their older versions, which a full download does not meet, as
+    // the index was cleared for all files before, while an incremental sync cleared it only for the unsynced files.
+    final Set<String> obsoleteIssueKeys = batch.issues.stream()
+        .filter(issue -> !isUnresolved(issue))
+        .map(Issue::getKey)
+        .collect(Collectors.toCollection(HashSet::new));
+    if (incrementalSync) {
+      index.values().forEach(
+          sonarIssues -> sonarIssues.forEach(sonarIssue -> obsoleteIssueKeys.add(sonarIssue.getKey()))
+      );
+    }
+    IssuesByFileIndex.mergeIssues(enrichedSettings.project, index, obsoleteIssueKeys);
+
+    final int indexedIssuesCount = index.values().stream()
+        .mapToInt(Set::size)
         .sum();
+    indexedIssuesCountByResourceKey.merge(batch.resourceKey, indexedIssuesCount, Integer::sum);
+  }
+
+  private static boolean isUnresolved(Issue issue) {
+    return Strings.isNullOrEmpty(issue.getResolution());
+  }
+
+  private void finishIndexFor(IssuesBatch endOfResource) {
     sonarConsole.info(
         String.format(
-            "Downloaded %d issues in %s",
-            downloadedIssuesCount,
-            DurationUtil.getDurationBreakdown(System.currentTimeMillis() - downloadStartTime)
+            "Finished creating index with %d issues for SonarQube resource %s",
+            indexedIssuesCountByResourceKey.getOrDefault(endOfResource.resourceKey, 0),
+            endOfResource.resourceKey
         )
     );
-    createIssuesIndex();
-  }
-
-  private void createIssuesIndex() {
-    for (Map.Entry<String, ImmutableList<Issue>> entry : downloadedIssuesByResourceKey.entrySet()) {
-      if (ProgressManager.getInstance().getProgressIndicator().isCanceled()) {
-        break;
-      }
-      sonarConsole.info(String.format("Creating index for SonarQube resource %s", entry.getKey()));
-      long indexCreationStartTime = System.currentTimeMillis();
-      final ImmutableList<Issue> issues = entry.getValue();
-      final Map<String, Set<SonarIssue>> index = new IssuesByFileIndexer(psiFiles)
-          .withSonarServerIssues(issues)
-          .withSonarConsole(sonarConsole)
-          .create();
-      final Optional<IssuesByFileIndexProjectService> indexService =
-          IssuesByFileIndexProjectService.getInstance(enrichedSettings.project);
-      indexService.ifPresent(s -> s.getIndex().putAll(index));
-      final int issuesCountInIndex = (int) index.values().stream()
-          .mapToLong(Set::size)
-          .sum();
-      sonarConsole.info(
-          String.format(
-              "Finished creating index with %d issues for SonarQube resource %s in %s",
-              issuesCountInIndex,
-              entry.getKey(),
-              DurationUtil.getDurationBreakdown(System.currentTimeMillis() - indexCreationStartTime)
-          )
-      );
+    if (endOfResource.downloaded) {
+      downloadedResourcesCount++;
+    }
+    IssuesByFileIndexProjectService.getInstance(enrichedSettings.project)
+        .ifPresent(indexService -> updateSyncMark(indexService, endOfResource.resourceKey, endOfResource.downloaded));
+  }
+
+  private void updateSyncMark(IssuesByFileIndexProjectService indexService, String resourceKey, boolean downloaded) {
+    if (!recordSyncMarks) {
+      return;
+    }
+    final Map<String, IssuesSyncMark> syncMarks = indexService.getSyncMarks();
+    if (!downloaded) {
+      // the index may miss issues of the resource or still hold issues resolved since the last sync mark, so the next
+      // download has to be a full one
+      syncMarks.remove(resourceKey);
+      return;
+    }
+    final String previousUpdateDate = incrementalSync
+        ? Optional.ofNullable(syncMarks.get(resourceKey)).map(IssuesSyncMark::getLastUpdateDate).orElse(null)
+        : null;
+    final String lastUpdateDate = SonarDates.latest(previousUpdateDate, syncDateByResourceKey.get(resourceKey));
+    if (lastUpdateDate == null) {
+      syncMarks.remove(resourceKey);
+    } else {
+      syncMarks.put(resourceKey, new IssuesSyncMark(getFingerprint(), lastUpdateDate));
     }
   }
 
@@ -131,10 +533,90 @@ public class DownloadIssuesTask implements Runnable {
         .add("sonarServerConfig", sonarServerConfig)
         .add("resourceKeys", resourceKeys)
         .add("psiFiles", psiFiles)
-        .add("downloadedIssuesByResourceKey", downloadedIssuesByResourceKey)
+        .add("downloadedIssuesCount", downloadedIssuesCount)
         .toString();
   }
 
+  /**
+   * combines the page progress of all resources downloaded in parallel into one progress indicator
+   */
+  private static class CombinedDownloadProgress {
+
+    private final ProgressIndicator indicator;
+    private final int resourcesCount;
+    private final Map<String, Double> fractionByResourceKey = Maps.newConcurrentMap();
+    private final AtomicInteger finishedResourcesCount = new AtomicInteger(0);
+
+    CombinedDownloadProgress(ProgressIndicator indicator, int resourcesCount) {
+      this.indicator = indicator;
+      this.resourcesCount = Math.max(1, resourcesCount);
+    }
+
+    boolean isCanceled() {
+      return indicator != null && indicator.isCanceled();
+    }
+
+    IssuesDownloadProgress forResource(String resourceKey) {
+      return new IssuesDownloadProgress() {
+        @Override
+        public boolean isCanceled() {
+          return CombinedDownloadProgress.this.isCanceled();
+        }
+
+        @Override
+        public void pagesDownloaded(int downloadedPages, int pages) {
+          update(resourceKey, downloadedPages * 1.0 / pages);
+        }
+      };
+    }
+
+    void finished(String resourceKey) {
+      finishedResourcesCount.incrementAndGet();
+      update(resourceKey, 1.0);
+    }
+
+    private void update(String resourceKey, double resourceFraction) {
+      fractionByResourceKey.put(resourceKey, resourceFraction);
+      final double fractionsSum = fractionByResourceKey.values().stream().mapToDouble(Double::doubleValue).sum();
+      ProgressIndicatorUtil.setFraction(indicator, fractionsSum / resourcesCount);
+      ProgressIndicatorUtil.setText(
+          indicator,
+          String.format("%d / %d SonarQube resources downloaded", finishedResourcesCount.get(), resourcesCount)
+      );
+      ProgressIndicatorUtil.setText2(indicator, resourceKey);
+    }
+  }
+
+  /**
+   * a page of downloaded issues, or the marker that all issues of the resource were downloaded
+   */
+  private static final class IssuesBatch {
+
+    private final String resourceKey;
+    private final List<Issue> issues;
+    private final boolean endOfResource;
+    private final boolean downloaded;
+
+    private IssuesBatch(String resourceKey, List<Issue> issues, boolean endOfResource, boolean downloaded) {
+      this.resourceKey = resourceKey;
+      this.issues = issues;
+      this.endOfResource = endOfResource;
+      this.downloaded = downloaded;
+    }
+
+    static IssuesBatch of(String resourceKey, List<Issue> issues) {
+      return new IssuesBatch(resourceKey, issues, false, true);
+    }
+
+    static IssuesBatch endOf(String resourceKey, boolean downloaded) {
+      return new IssuesBatch(resourceKey, Collections.emptyList(), true, downloaded);
+    }
+
+    boolean isEndOfResource() {
+      return endOfResource;
+    }
+  }
+
   private static class DownloadIssuesTaskBuilder {
 
     private DownloadIssuesTask downloadIssuesTask;
@@ -10,6 +10,7 @@ import com.intellij.psi.PsiFile;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import org.intellij.sonar.index.FileIssues;
 import org.intellij.sonar.index.SonarIssue;
 import org.intellij.sonar.persistence.IssuesByFileIndexProjectService;
 import org.intellij.sonar.persistence.ModuleSettings;
@@ -108,19 +109,16 @@ public class IssueDescriptionLinkHandler extends TooltipLinkHandler {
         processing = false;
         return;
       }
-      state = issuesByFileIndexProjectService.get().getState();
-      if (state == null) {
-        processing = false;
-      }
+      state = issuesByFileIndexProjectService.get();
     }
 
     private void getSonarIssue() {
       final Map<String, Set<SonarIssue>> index = state.getIndex();
       final String path = psiFile.getVirtualFile().getPath();
       final Set<SonarIssue> issues = index.get(path);
-      sonarIssue = issues.stream()
-          .filter(issue -> sonarIssueKey.equals(issue.getKey()))
-          .findFirst().orElse(null);
+      sonarIssue = issues == null
+          ? null
+          : FileIssues.of(issues).findByKey(sonarIssueKey).orElse(null);
       if (sonarIssue == null) {
         processing = false;
       }
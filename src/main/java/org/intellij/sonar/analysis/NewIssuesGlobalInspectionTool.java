@@ -1,6 +1,6 @@
 package org.intellij.sonar.analysis;
 
-import com.google.common.collect.ImmutableList;
+import com.intellij.analysis.AnalysisScope;
 import com.intellij.codeInspection.GlobalInspectionContext;
 import com.intellij.codeInspection.InspectionEP;
 import com.intellij.codeInspection.InspectionManager;
@@ -8,14 +8,13 @@ import com.intellij.codeInspection.ProblemDescriptionsProcessor;
 import com.intellij.notification.Notification;
 import com.intellij.notification.NotificationType;
 import com.intellij.notification.Notifications;
-import com.intellij.psi.PsiElementVisitor;
-import com.intellij.psi.PsiFile;
-import java.util.Objects;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
-import java.util.stream.Collectors;
+import org.intellij.sonar.index.IssuesByFileIndex;
 import org.intellij.sonar.index.SonarIssue;
-import org.intellij.sonar.persistence.IssuesByFileIndexProjectService;
+import org.intellij.sonar.persistence.IssuesIndexSnapshot;
 import org.jetbrains.annotations.Nls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -59,28 +58,18 @@ public class NewIssuesGlobalInspectionTool extends BaseGlobalInspectionTool {
       @NotNull ProblemDescriptionsProcessor problemDescriptionsProcessor
   ) {
     super.inspectionFinished(manager, context, problemDescriptionsProcessor);
-    final ImmutableList.Builder<PsiFile> pfb = ImmutableList.builder();
-    context.getRefManager().getScope().accept(
-        new PsiElementVisitor() {
-          @Override
-          public void visitFile(PsiFile file) {
-            pfb.add(file);
-          }
+    final Optional<IssuesIndexSnapshot> snapshot = IssuesByFileIndex.getSnapshot(context.getProject());
+    if (snapshot.isPresent()) {
+      final AnalysisScope scope = context.getRefManager().getScope();
+      final LocalFileSystem fileSystem = LocalFileSystem.getInstance();
+      // only the files with new issues are looked up in the scope instead of walking all files of the scope
+      long newIssuesCount = 0;
+      for (Map.Entry<String, Integer> entry : snapshot.get().getStatistics().getNewIssuesCountByFile().entrySet()) {
+        final VirtualFile file = fileSystem.findFileByPath(entry.getKey());
+        if (file != null && (scope == null || scope.contains(file))) {
+          newIssuesCount += entry.getValue();
         }
-    );
-    final ImmutableList<PsiFile> analyzedFiles = pfb.build();
-    final Set<String> analyzedPaths = analyzedFiles.stream()
-        .filter(Objects::nonNull)
-        .map(psiFile -> psiFile.getVirtualFile().getPath())
-        .collect(Collectors.toSet());
-    final Optional<IssuesByFileIndexProjectService> indexService =
-        IssuesByFileIndexProjectService.getInstance(context.getProject());
-    if (indexService.isPresent()) {
-      long newIssuesCount = indexService.get().getIndex().entrySet().stream()
-          .filter(entry -> analyzedPaths.contains(entry.getKey()))
-          .flatMap(entry -> entry.getValue().stream())
-          .filter(SonarIssue::getIsNew)
-          .count();
+      }
       sendNotification(context, newIssuesCount);
     }
   }
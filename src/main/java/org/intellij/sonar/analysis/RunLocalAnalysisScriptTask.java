@@ -17,12 +17,16 @@ import com.intellij.psi.PsiFile;
 import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Collectors;
 import org.intellij.sonar.configuration.WorkingDirs;
 import org.intellij.sonar.console.SonarConsole;
 import org.intellij.sonar.console.StreamGobbler;
+import org.intellij.sonar.index.IssuePositions;
 import org.intellij.sonar.index.IssuesByFileIndexer;
 import org.intellij.sonar.index.SonarIssue;
 import org.intellij.sonar.persistence.IssuesByFileIndexProjectService;
@@ -296,6 +300,9 @@ public class RunLocalAnalysisScriptTask implements Runnable {
     if (!index.isEmpty()) {
       logNewIssuesToConsole(index);
       indexService.get().getIndex().putAll(index);
+      // the report replaces the downloaded issues of its files, so their issues are downloaded again by the next sync
+      indexService.get().markUnsynced(index.keySet());
+      IssuePositions.getInstance(enrichedSettings.project).forget(index.keySet());
     }
   }
 
@@ -329,17 +336,14 @@ public class RunLocalAnalysisScriptTask implements Runnable {
       IssuesByFileIndexProjectService indexService
   ) {
     if (sonarReport.getComponents() != null) {
-      for (Component component : sonarReport.getComponents()) {
-        removeComponentFromIndex(indexService, component);
-      }
-    }
-  }
-
-  private void removeComponentFromIndex(IssuesByFileIndexProjectService indexComponent, Component component) {
-    final String path = component.getPath();
-    if (path != null) {
-      final String componentFullPath = new File(workingDir, path).toString();
-      indexComponent.getIndex().remove(componentFullPath);
+      final List<String> componentFullPaths = sonarReport.getComponents().stream()
+          .map(Component::getPath)
+          .filter(Objects::nonNull)
+          .map(path -> new File(workingDir, path).toString())
+          .collect(Collectors.toList());
+      indexService.update(index -> componentFullPaths.forEach(index::remove));
+      indexService.markUnsynced(componentFullPaths);
+      IssuePositions.getInstance(enrichedSettings.project).forget(componentFullPaths);
     }
   }
 
@@ -14,30 +14,29 @@ import com.intellij.lang.annotation.HighlightSeverity;
 import com.intellij.openapi.actionSystem.IdeActions;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.editor.Document;
-import com.intellij.openapi.editor.Editor;
-import com.intellij.openapi.editor.markup.HighlighterTargetArea;
-import com.intellij.openapi.editor.markup.MarkupModel;
-import com.intellij.openapi.editor.markup.RangeHighlighter;
-import com.intellij.openapi.editor.markup.TextAttributes;
+import com.intellij.openapi.fileEditor.FileEditorManager;
 import com.intellij.openapi.keymap.Keymap;
 import com.intellij.openapi.keymap.KeymapManager;
 import com.intellij.openapi.keymap.KeymapUtil;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
 import com.intellij.openapi.roots.ProjectFileIndex;
-import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
 import com.intellij.util.ui.UIUtil;
 import com.intellij.xml.util.XmlStringUtil;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
-import org.intellij.sonar.DocumentChangeListener;
+import org.intellij.sonar.index.IssuePositions;
 import org.intellij.sonar.index.IssuesByFileIndex;
 import org.intellij.sonar.index.SonarIssue;
+import org.intellij.sonar.persistence.IssuesIndexSnapshot;
 import org.intellij.sonar.util.Finders;
+import org.intellij.sonar.util.LineRanges;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -45,11 +44,10 @@ import org.jetbrains.annotations.Nullable;
 public class SonarExternalAnnotator
     extends ExternalAnnotator<SonarExternalAnnotator.InitialInfo, SonarExternalAnnotator.AnnotationResult> {
 
-  public static final Key<Set<SonarIssue>> KEY = new Key<>("issues");
-
   public static class InitialInfo {
 
     public PsiFile psiFile;
+    public IssuesIndexSnapshot snapshot;
   }
 
   static class AnnotationResult {
@@ -60,104 +58,61 @@ public class SonarExternalAnnotator
   @Nullable
   @Override
   public InitialInfo collectInformation(@NotNull PsiFile file) {
+    final VirtualFile virtualFile = file.getVirtualFile();
+    if (virtualFile == null) {
+      return null;
+    }
+    final Optional<IssuesIndexSnapshot> snapshot = IssuesByFileIndex.getSnapshot(file.getProject());
+    if (!snapshot.isPresent()) {
+      return null;
+    }
+    // most files have no issues, they are skipped before any work is handed to a pooled thread
+    if (!snapshot.get().hasIssues(virtualFile.getPath())) {
+      return null;
+    }
     InitialInfo initialInfo = new InitialInfo();
     initialInfo.psiFile = file;
+    initialInfo.snapshot = snapshot.get();
     return initialInfo;
   }
 
+  /**
+   * runs on the background thread of the daemon, which cancels it as soon as the file changes again
+   */
   @Nullable
   @Override
   public AnnotationResult doAnnotate(final InitialInfo initialInfo) {
+    ProgressManager.checkCanceled();
     final AnnotationResult annotationResult = new AnnotationResult();
-    try {
-      ApplicationManager.getApplication().executeOnPooledThread(
-          () -> {
-            annotationResult.sonarIssues = createSonarIssues(initialInfo.psiFile);
-          }
-      ).get();
-    } catch (InterruptedException | ExecutionException e) {
-      throw new IllegalStateException(e);
-    }
+    annotationResult.sonarIssues = createSonarIssues(initialInfo.psiFile, initialInfo.snapshot);
     return annotationResult;
   }
 
+  /**
+   * tracks the lines of the issues in the document of the file, in one task for all issues of the file. A cancelled
+   * pass tracks nothing, as the document may have changed since the issues were looked up.
+   */
   @NotNull
-  private Set<SonarIssue> createSonarIssues(PsiFile psiFile) {
-    final Set<SonarIssue> issues;
-    if (!fileChanged(psiFile)) {
-      issues = putIssuesToInvisibleHighlightersFor(psiFile);
-    } else {
-      issues = getSonarIssuesFromExistingHighlightersFor(psiFile);
-    }
-    return issues;
-  }
-
-  private boolean fileChanged(PsiFile psiFile) {
-    return DocumentChangeListener.CHANGED_FILES.contains(psiFile.getVirtualFile());
-  }
-
-  private Set<SonarIssue> putIssuesToInvisibleHighlightersFor(PsiFile psiFile) {
-    Set<SonarIssue> issues;
-    issues = IssuesByFileIndex.getIssuesForFile(psiFile);
-    for (SonarIssue issue : issues) {
-      final TextRange textRange = Finders.getLineRange(psiFile, issue.getLine());
-      createInvisibleHighlighter(psiFile, issue, textRange);
-    }
-    return issues;
-  }
-
-  private Set<SonarIssue> getSonarIssuesFromExistingHighlightersFor(PsiFile psiFile) {
-    Set<SonarIssue> issues;
-    final Set<SonarIssue> issuesFromHighlighters = Sets.newLinkedHashSet();
-    Optional<Document> document = Finders.findDocumentFromPsiFile(psiFile);
-    if (document.isPresent()) {
-      Set<RangeHighlighter> highlighters = Finders.findAllRangeHighlightersFrom(document.get());
-      for (RangeHighlighter highlighter : highlighters) {
-        Optional<Set<SonarIssue>> issuesFromHighlighter = Optional.ofNullable(highlighter.getUserData(KEY));
-        issuesFromHighlighter.ifPresent(issuesFromHighlighters::addAll);
-      }
-    }
-    issues = issuesFromHighlighters;
-    return issues;
-  }
-
-  private void createInvisibleHighlighter(PsiFile psiFile, final SonarIssue issue, final TextRange textRange) {
+  private Set<SonarIssue> createSonarIssues(PsiFile psiFile, IssuesIndexSnapshot snapshot) {
+    final Set<SonarIssue> issues = IssuesByFileIndex.getIssuesForFile(psiFile, snapshot);
+    ProgressManager.checkCanceled();
     final Optional<Document> document = Finders.findDocumentFromPsiFile(psiFile);
-    if (!document.isPresent()) {
-      return;
-    }
-    final List<Editor> editors = Finders.findEditorsFrom(document.get());
-    for (final Editor editor : editors) {
-      final MarkupModel markupModel = editor.getMarkupModel();
+    if (document.isPresent() && !issues.isEmpty()) {
+      final Project project = psiFile.getProject();
+      final VirtualFile virtualFile = psiFile.getVirtualFile();
+      final ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
       ApplicationManager.getApplication().invokeLater(
-          () -> addSonarIssuesToHighlighter(issue, textRange, editor, markupModel)
-      );
-    }
-  }
-
-  private void addSonarIssuesToHighlighter(SonarIssue issue, TextRange textRange, Editor editor, MarkupModel markupModel) {
-    final Optional<RangeHighlighter> rangeHighlighterAtLine = Finders.findRangeHighlighterAtLine(
-        editor,
-        issue.getLine()
-    );
-    if (rangeHighlighterAtLine.isPresent()) {
-      final Set<SonarIssue> issuesOfHighlighter = rangeHighlighterAtLine.get().getUserData(KEY);
-      if (null != issuesOfHighlighter) {
-        issuesOfHighlighter.add(issue);
-      }
-    } else {
-      TextAttributes attrs = new TextAttributes();
-      final RangeHighlighter rangeHighlighter = markupModel.addRangeHighlighter(
-          textRange.getStartOffset(),
-          textRange.getEndOffset(),
-          0,
-          attrs,
-          HighlighterTargetArea.EXACT_RANGE
+          () -> {
+            // the markers of closed files are released, so none are created for a file closed in the meantime
+            if ((indicator == null || !indicator.isCanceled()) &&
+                FileEditorManager.getInstance(project).isFileOpen(virtualFile)) {
+              IssuePositions.getInstance(project).track(virtualFile.getPath(), document.get(), issues);
+            }
+          },
+          project.getDisposed()
       );
-      Set<SonarIssue> issuesOfHighlighter = Sets.newLinkedHashSet();
-      issuesOfHighlighter.add(issue);
-      rangeHighlighter.putUserData(KEY, issuesOfHighlighter);
     }
+    return issues;
   }
 
   @Override
@@ -185,8 +140,10 @@ public class SonarExternalAnnotator
       @NotNull AnnotationHolder holder
   ) {
     final Set<SonarIssue> issues = annotationResult.sonarIssues;
+    // the lines of the file are resolved once for all of its issues
+    final LineRanges lineRanges = LineRanges.of(psiFile);
     for (SonarIssue issue : issues) {
-      Optional<Annotation> annotation = createAnnotation(holder, psiFile, issue);
+      Optional<Annotation> annotation = createAnnotation(holder, psiFile, lineRanges, issue);
       if (annotation.isPresent()) {
         String tooltip = createTooltip(issue);
         annotation.get().setTooltip(tooltip);
@@ -194,24 +151,36 @@ public class SonarExternalAnnotator
     }
   }
 
-  private static Optional<Annotation> createAnnotation(AnnotationHolder holder, PsiFile psiFile, SonarIssue issue) {
+  private static Optional<Annotation> createAnnotation(
+      AnnotationHolder holder,
+      PsiFile psiFile,
+      LineRanges lineRanges,
+      SonarIssue issue
+  ) {
     HighlightSeverity severity = SonarToIjSeverityMapping.toHighlightSeverity(issue.getSeverity());
     Annotation annotation;
-    if (issue.getLine() == null) {
+    final Integer line = IssuePositions.getLine(psiFile, issue);
+    if (line == null) {
       annotation = createAnnotation(holder, issue.formattedMessage(), psiFile, severity);
       annotation.setFileLevelAnnotation(true);
     } else {
-      Optional<PsiElement> startElement = Finders.findFirstElementAtLine(psiFile, issue.getLine());
+      // the text range reported by the server is placed by document offsets, without building and walking the PSI
+      final Optional<TextRange> textRange = lineRanges.getDocument()
+          .flatMap(document -> IssuePositions.getTextRange(psiFile, document, issue));
+      if (textRange.isPresent()) {
+        return Optional.of(createAnnotation(holder, issue.formattedMessage(), textRange.get(), severity));
+      }
+      Optional<PsiElement> startElement = lineRanges.findFirstElementAtLine(line);
       if (!startElement.isPresent()) {
         // There is no AST element on this line. Maybe a tabulation issue on a blank line?
         annotation = createAnnotation(
             holder,
             issue.formattedMessage(),
-            Finders.getLineRange(psiFile, issue.getLine()),
+            lineRanges.getLineRange(line),
             severity
         );
       } else if (startElement.get().isValid()) {
-        TextRange lineRange = Finders.getLineRange(startElement.get());
+        TextRange lineRange = lineRanges.getLineRange(startElement.get());
         annotation = createAnnotation(holder, issue.formattedMessage(), lineRange, severity);
       } else {
         annotation = null;
@@ -31,27 +31,27 @@ import com.intellij.notification.Notification;
 import com.intellij.notification.NotificationType;
 import com.intellij.notification.Notifications;
 import com.intellij.openapi.application.ApplicationManager;
-import com.intellij.openapi.editor.Editor;
-import com.intellij.openapi.editor.EditorFactory;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.module.ModuleUtilCore;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Key;
 import com.intellij.openapi.wm.ToolWindow;
 import com.intellij.openapi.wm.ToolWindowManager;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.PsiFile;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.Predicate;
-import org.intellij.sonar.DocumentChangeListener;
 import org.intellij.sonar.console.SonarConsole;
 import org.intellij.sonar.console.SonarToolWindowFactory;
 import org.intellij.sonar.index.IssuesByFileIndex;
+import org.intellij.sonar.persistence.EffectiveSettingsCache;
 import org.intellij.sonar.persistence.LocalAnalysisScripts;
 import org.intellij.sonar.persistence.ModuleSettings;
 import org.intellij.sonar.persistence.ProjectSettings;
@@ -114,6 +114,8 @@ public class SonarQubeInspectionContext implements GlobalInspectionContextExtens
 
     void runInspectionTools() {
       initProject();
+      // the settings may have been changed without being loaded, so they are computed once per inspection run
+      EffectiveSettingsCache.getInstance(project).clear();
       collectModulesAndFiles();
       buildEnrichedSettingsFromScope();
       checkIsNewIssuesInspectionToolEnabled();
@@ -127,7 +129,6 @@ public class SonarQubeInspectionContext implements GlobalInspectionContextExtens
       saveAllDocuments();
       showSonarQubeToolWindowIfNeeded();
       SonarConsole.get(project).clear();
-      IssuesByFileIndex.clearIndexFor(psiFiles);
       downloadOldIssues();
       runLocalAnalysisScriptForNewIssues();
     }
@@ -274,24 +275,42 @@ public class SonarQubeInspectionContext implements GlobalInspectionContextExtens
     }
 
     private void downloadOldIssues() {
-      if (oldIssuesGlobalInspectionToolEnabled) {
-        for (final EnrichedSettings settings : enrichedSettingsFromScope) {
-          runDownloadTaskFrom(settings);
-        }
+      if (!oldIssuesGlobalInspectionToolEnabled) {
+        IssuesByFileIndex.clearIndexFor(psiFiles);
+        return;
+      }
+      final List<DownloadIssuesTask> downloadTasks = new ArrayList<>();
+      for (final EnrichedSettings settings : enrichedSettingsFromScope) {
+        createDownloadTaskFrom(settings).ifPresent(downloadTasks::add);
+      }
+      // only the whole project is synced incrementally, as only then the sync marks cover all indexed files. The
+      // changed issues are downloaded before the index is cleared, as too many of them take a full download instead.
+      final boolean incrementalSync = isProjectScope()
+          && !downloadTasks.isEmpty()
+          && downloadTasks.stream().allMatch(DownloadIssuesTask::canSyncIncrementally)
+          && downloadTasks.stream().allMatch(DownloadIssuesTask::downloadChangedIssues);
+      ProgressManager.checkCanceled();
+      // an incremental sync downloads all issues again only for the files whose downloaded issues were replaced since
+      IssuesByFileIndex.clearIndexFor(incrementalSync ? IssuesByFileIndex.getUnsyncedFiles(psiFiles) : psiFiles);
+      for (DownloadIssuesTask downloadTask : downloadTasks) {
+        downloadTask
+            .withIncrementalSync(incrementalSync)
+            .withSyncMarksRecording(isProjectScope())
+            .withDownloadLimitedToFiles(!isProjectScope())
+            .run();
       }
     }
 
-    private void runDownloadTaskFrom(EnrichedSettings enrichedSettings) {
+    private Optional<DownloadIssuesTask> createDownloadTaskFrom(EnrichedSettings enrichedSettings) {
       final Optional<DownloadIssuesTask> downloadTask = DownloadIssuesTask.from(project, enrichedSettings, psiFiles);
-      if (downloadTask.isPresent()) {
-        downloadTask.get().run();
-      } else {
+      if (!downloadTask.isPresent()) {
         Notifications.Bus.notify(new Notification(
             GROUP_ID, TITLE,
             "SonarQube is enabled, but the sonar server is not configured. Aborting...",
             NotificationType.ERROR
         ));
       }
+      return downloadTask;
     }
 
     private void runLocalAnalysisScriptForNewIssues() {
@@ -325,24 +344,11 @@ public class SonarQubeInspectionContext implements GlobalInspectionContextExtens
       @NotNull List<InspectionToolWrapper<?, ?>> inspections,
       @NotNull GlobalInspectionContext context
   ) {
-    DocumentChangeListener.CHANGED_FILES.clear();
     final Project project = context.getProject();
-    // rerun external annotator and refresh highlighters in editor
-    removeAllHighlighters();
+    // rerun external annotator
     DaemonCodeAnalyzer.getInstance(project).restart();
   }
 
-  private static void removeAllHighlighters() {
-    ApplicationManager.getApplication().invokeLater(
-        () -> {
-          Editor[] allEditors = EditorFactory.getInstance().getAllEditors();
-          for (Editor editor : allEditors) {
-            editor.getMarkupModel().removeAllHighlighters();
-          }
-        }
-    );
-  }
-
   @Override
   public void cleanup() {
     // do nothing
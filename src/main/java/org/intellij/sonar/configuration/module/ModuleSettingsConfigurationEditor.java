@@ -25,6 +25,7 @@ import org.intellij.sonar.configuration.WorkingDirs;
 import org.intellij.sonar.configuration.partials.AlternativeWorkingDirActionListener;
 import org.intellij.sonar.configuration.partials.SonarResourcesTableView;
 import org.intellij.sonar.persistence.ModuleSettings;
+import org.intellij.sonar.persistence.ResolvedComponentsProjectService;
 import org.intellij.sonar.persistence.Resource;
 import org.intellij.sonar.persistence.Settings;
 import org.intellij.sonar.util.LocalAnalysisScriptsUtil;
@@ -141,6 +142,11 @@ public class ModuleSettingsConfigurationEditor implements ModuleConfigurationEdi
   public void apply() {
     Settings settings = this.toSettings();
     ModuleSettings moduleSettings = ModuleSettings.getInstance(myModule);
+    if (!settings.equals(moduleSettings.getState())) {
+      // the components resolve to other files if the resources of the files changed
+      ResolvedComponentsProjectService.getInstance(myModule.getProject())
+          .ifPresent(ResolvedComponentsProjectService::clear);
+    }
     moduleSettings.loadState(settings);
   }
 
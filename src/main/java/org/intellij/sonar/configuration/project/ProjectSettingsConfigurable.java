@@ -21,6 +21,7 @@ import org.intellij.sonar.configuration.WorkingDirs;
 import org.intellij.sonar.configuration.partials.AlternativeWorkingDirActionListener;
 import org.intellij.sonar.configuration.partials.SonarResourcesTableView;
 import org.intellij.sonar.persistence.ProjectSettings;
+import org.intellij.sonar.persistence.ResolvedComponentsProjectService;
 import org.intellij.sonar.persistence.Resource;
 import org.intellij.sonar.persistence.Settings;
 import org.intellij.sonar.persistence.SonarConsoleSettings;
@@ -147,6 +148,10 @@ public class ProjectSettingsConfigurable implements Configurable {
 
   @Override
   public void apply() {
+    if (isProjectSettingsModified()) {
+      // the components resolve to other files if the resources of the files changed
+      ResolvedComponentsProjectService.getInstance(myProject).ifPresent(ResolvedComponentsProjectService::clear);
+    }
     myProjectSettings.loadState(this.toSettings());
     myConsoleSettings.loadState(this.toConsoleSettings());
   }
@@ -0,0 +1,258 @@
+package org.intellij.sonar.index;
+
+import com.google.common.base.Objects;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * the immutable issues of a file, stored column by column instead of as one object per issue: the issues are sorted by
+ * line, file level issues first, with the rule keys, severities and messages as indices into pools of the distinct
+ * values of the file. Issues on lines are found by binary search and issues by key through an open addressing table,
+ * the issues themselves are only created while iterating.
+ */
+public final class FileIssues extends AbstractSet<SonarIssue> {
+
+  public static final FileIssues EMPTY = new FileIssues(Collections.emptyList());
+
+  // the start line of issues without text range, as the lines of text ranges start at 1
+  private static final int NO_TEXT_RANGE = -1;
+  private static final Comparator<SonarIssue> BY_LINE = Comparator.comparingInt(
+      issue -> issue.hasLine() ? issue.line() : Integer.MIN_VALUE
+  );
+
+  private final String[] keys;
+  private final int[] lines;
+  private final byte[] flags;
+  private final int[] ruleKeys;
+  private final int[] severities;
+  private final int[] messages;
+  // the start line, start line offset, end line and end line offset of the text range of every issue
+  private final int[] textRanges;
+  private final String[] ruleKeyPool;
+  private final String[] severityPool;
+  private final String[] messagePool;
+  private final int fileLevelIssuesCount;
+  // the index of the issue plus one by the hash of the issue, zero for free slots
+  private final int[] slots;
+
+  private FileIssues(Collection<SonarIssue> distinctIssues) {
+    final SonarIssue[] issues = distinctIssues.toArray(new SonarIssue[0]);
+    // the sort is stable, so the issues of a line keep their order
+    Arrays.sort(issues, BY_LINE);
+    final int size = issues.length;
+    keys = new String[size];
+    lines = new int[size];
+    flags = new byte[size];
+    ruleKeys = new int[size];
+    severities = new int[size];
+    messages = new int[size];
+    textRanges = new int[size * 4];
+    final Map<String, Integer> ruleKeyIndices = new HashMap<>();
+    final Map<String, Integer> severityIndices = new HashMap<>();
+    final Map<String, Integer> messageIndices = new HashMap<>();
+    int fileLevelCount = 0;
+    for (int i = 0; i < size; i++) {
+      final SonarIssue issue = issues[i];
+      keys[i] = issue.getKey();
+      lines[i] = issue.line();
+      flags[i] = issue.flags();
+      ruleKeys[i] = ruleKeyIndices.computeIfAbsent(issue.getRuleKey(), ruleKey -> ruleKeyIndices.size());
+      severities[i] = severityIndices.computeIfAbsent(issue.getSeverity(), severity -> severityIndices.size());
+      messages[i] = messageIndices.computeIfAbsent(issue.getMessage(), message -> messageIndices.size());
+      final IssueTextRange textRange = issue.getTextRange();
+      if (textRange == null) {
+        textRanges[i * 4] = NO_TEXT_RANGE;
+      } else {
+        textRanges[i * 4] = textRange.getStartLine();
+        textRanges[i * 4 + 1] = textRange.getStartLineOffset();
+        textRanges[i * 4 + 2] = textRange.getEndLine();
+        textRanges[i * 4 + 3] = textRange.getEndLineOffset();
+      }
+      if (!issue.hasLine()) {
+        fileLevelCount++;
+      }
+    }
+    ruleKeyPool = toPool(ruleKeyIndices);
+    severityPool = toPool(severityIndices);
+    messagePool = toPool(messageIndices);
+    fileLevelIssuesCount = fileLevelCount;
+    int capacity = 2;
+    while (capacity < size * 2) {
+      capacity <<= 1;
+    }
+    slots = new int[capacity];
+    for (int i = 0; i < size; i++) {
+      int slot = slotOf(issues[i].hashCode());
+      while (slots[slot] != 0) {
+        slot = (slot + 1) & (slots.length - 1);
+      }
+      slots[slot] = i + 1;
+    }
+  }
+
+  /**
+   * @return the issues as file issues, distinct by their identity
+   */
+  public static FileIssues of(@NotNull Collection<SonarIssue> issues) {
+    if (issues instanceof FileIssues) {
+      return (FileIssues) issues;
+    }
+    if (issues.isEmpty()) {
+      return EMPTY;
+    }
+    return new FileIssues(issues instanceof Set ? issues : new LinkedHashSet<>(issues));
+  }
+
+  private static String[] toPool(Map<String, Integer> indices) {
+    final String[] pool = new String[indices.size()];
+    indices.forEach((value, index) -> pool[index] = value);
+    return pool;
+  }
+
+  /**
+   * @return the issues from the first to the last line, both inclusive
+   */
+  public List<SonarIssue> onLines(int fromLine, int toLine) {
+    final int from = firstIndexOnOrAfter(fromLine);
+    final int to = toLine == Integer.MAX_VALUE ? lines.length : firstIndexOnOrAfter(toLine + 1);
+    if (from >= to) {
+      return Collections.emptyList();
+    }
+    final List<SonarIssue> issues = new ArrayList<>(to - from);
+    for (int i = from; i < to; i++) {
+      issues.add(issue(i));
+    }
+    return issues;
+  }
+
+  public List<SonarIssue> onLine(int line) {
+    return onLines(line, line);
+  }
+
+  private int firstIndexOnOrAfter(int line) {
+    int low = fileLevelIssuesCount;
+    int high = lines.length;
+    while (low < high) {
+      final int middle = (low + high) >>> 1;
+      if (lines[middle] < line) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * finds the issue by its key, using that keyed issues hash like their keys
+   */
+  public Optional<SonarIssue> findByKey(String key) {
+    if (key == null) {
+      return Optional.empty();
+    }
+    for (int slot = slotOf(key.hashCode()); slots[slot] != 0; slot = (slot + 1) & (slots.length - 1)) {
+      final int index = slots[slot] - 1;
+      if (key.equals(keys[index])) {
+        return Optional.of(issue(index));
+      }
+    }
+    return Optional.empty();
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    if (!(o instanceof SonarIssue)) {
+      return false;
+    }
+    final SonarIssue issue = (SonarIssue) o;
+    for (int slot = slotOf(issue.hashCode()); slots[slot] != 0; slot = (slot + 1) & (slots.length - 1)) {
+      if (matches(slots[slot] - 1, issue)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * compares the issue at the index with the issue like {@link SonarIssue#equals(Object)} does
+   */
+  private boolean matches(int index, SonarIssue issue) {
+    if (keys[index] != null || issue.getKey() != null) {
+      return Objects.equal(keys[index], issue.getKey());
+    }
+    return lines[index] == issue.line() &&
+        flags[index] == issue.flags() &&
+        Objects.equal(ruleKeyPool[ruleKeys[index]], issue.getRuleKey()) &&
+        Objects.equal(messagePool[messages[index]], issue.getMessage()) &&
+        Objects.equal(severityPool[severities[index]], issue.getSeverity());
+  }
+
+  private int slotOf(int hash) {
+    return (hash ^ (hash >>> 16)) & (slots.length - 1);
+  }
+
+  private SonarIssue issue(int index) {
+    return new SonarIssue(
+        keys[index],
+        ruleKeyPool[ruleKeys[index]],
+        messagePool[messages[index]],
+        severityPool[severities[index]],
+        lines[index],
+        flags[index],
+        textRangeAt(index)
+    );
+  }
+
+  private IssueTextRange textRangeAt(int index) {
+    final int offset = index * 4;
+    if (textRanges[offset] == NO_TEXT_RANGE) {
+      return null;
+    }
+    return new IssueTextRange(
+        textRanges[offset],
+        textRanges[offset + 1],
+        textRanges[offset + 2],
+        textRanges[offset + 3]
+    );
+  }
+
+  @NotNull
+  @Override
+  public Iterator<SonarIssue> iterator() {
+    return new Iterator<>() {
+
+      private int index;
+
+      @Override
+      public boolean hasNext() {
+        return index < keys.length;
+      }
+
+      @Override
+      public SonarIssue next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return issue(index++);
+      }
+    };
+  }
+
+  @Override
+  public int size() {
+    return keys.length;
+  }
+}
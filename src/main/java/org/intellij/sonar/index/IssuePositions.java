@@ -0,0 +1,278 @@
+package org.intellij.sonar.index;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.RangeMarker;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import org.intellij.sonar.util.Finders;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * where the issues moved to while their files are edited. The issues of the index are immutable and keep the line
+ * they were reported at, so the issues of an open document are tracked here by range markers of the document over their
+ * text ranges, or their lines for issues without text range. The markers move with the text and are invalidated when
+ * the text of an issue is deleted. The markers of a file are forgotten as soon as its issues are replaced in the index,
+ * as the new issues are reported where they are now, and when the file is closed, so no document is held after. On
+ * close the issues that moved are written back to the index where they are now first.
+ * <p>
+ * Issues are tracked on the event dispatch thread while the index forgets the markers of files from any thread, so all
+ * access to the markers is guarded by the lock of the instance.
+ */
+public class IssuePositions implements Disposable {
+
+  private final Map<String, DocumentPositions> positionsByFile = new HashMap<>();
+
+  public static IssuePositions getInstance(@NotNull Project project) {
+    return project.getService(IssuePositions.class);
+  }
+
+  /**
+   * @return the line the issue is at now in the file, or null for file level issues
+   */
+  @Nullable
+  public static Integer getLine(@NotNull PsiFile psiFile, @NotNull SonarIssue issue) {
+    final VirtualFile virtualFile = psiFile.getVirtualFile();
+    if (virtualFile == null || psiFile.getProject().isDisposed()) {
+      return issue.getLine();
+    }
+    return getInstance(psiFile.getProject()).getLine(virtualFile.getPath(), issue);
+  }
+
+  @Nullable
+  public synchronized Integer getLine(@NotNull String path, @NotNull SonarIssue issue) {
+    final DocumentPositions positions = positionsByFile.get(path);
+    final TrackedIssue trackedIssue = positions == null ? null : positions.issues.get(issue);
+    if (trackedIssue == null || !trackedIssue.marker.isValid()) {
+      return issue.getLine();
+    }
+    // the text range need not start at the line of the issue, so the line moves by as many lines as the marker did
+    final int markerLine = positions.document.getLineNumber(trackedIssue.marker.getStartOffset());
+    return issue.getLine() + markerLine - trackedIssue.markedLine;
+  }
+
+  /**
+   * @return the offsets of the text of the issue in the document of the file now, empty for issues without text range
+   * or whose text range is not in the document
+   */
+  public static Optional<TextRange> getTextRange(@NotNull PsiFile psiFile, @NotNull SonarIssue issue) {
+    return Finders.findDocumentFromPsiFile(psiFile).flatMap(document -> getTextRange(psiFile, document, issue));
+  }
+
+  public static Optional<TextRange> getTextRange(
+      @NotNull PsiFile psiFile,
+      @NotNull Document document,
+      @NotNull SonarIssue issue
+  ) {
+    final VirtualFile virtualFile = psiFile.getVirtualFile();
+    if (issue.getTextRange() == null || virtualFile == null || psiFile.getProject().isDisposed()) {
+      return Optional.empty();
+    }
+    return getInstance(psiFile.getProject()).getTextRange(virtualFile.getPath(), document, issue);
+  }
+
+  public synchronized Optional<TextRange> getTextRange(
+      @NotNull String path,
+      @NotNull Document document,
+      @NotNull SonarIssue issue
+  ) {
+    final IssueTextRange textRange = issue.getTextRange();
+    if (textRange == null) {
+      return Optional.empty();
+    }
+    final DocumentPositions positions = positionsByFile.get(path);
+    final TrackedIssue trackedIssue = positions == null ? null : positions.issues.get(issue);
+    if (trackedIssue == null) {
+      // the issue has not moved since it was reported
+      return Finders.getTextRange(document, textRange);
+    }
+    final RangeMarker marker = trackedIssue.marker;
+    if (!trackedIssue.coversTextRange || !marker.isValid() || marker.getStartOffset() >= marker.getEndOffset()) {
+      return Optional.empty();
+    }
+    return Optional.of(new TextRange(marker.getStartOffset(), marker.getEndOffset()));
+  }
+
+  /**
+   * marks the text ranges, or the lines, of the issues not tracked yet in the document of the file, where they were
+   * reported at. File level issues and issues beyond the end of the document are not tracked.
+   */
+  public synchronized void track(
+      @NotNull String path,
+      @NotNull Document document,
+      @NotNull Collection<SonarIssue> issues
+  ) {
+    DocumentPositions positions = positionsByFile.get(path);
+    if (positions == null || positions.document != document) {
+      forget(Collections.singleton(path));
+      positions = new DocumentPositions(document);
+      positionsByFile.put(path, positions);
+    }
+    for (SonarIssue issue : issues) {
+      final Integer line = issue.getLine();
+      if (line == null || positions.issues.containsKey(issue)) {
+        continue;
+      }
+      final Optional<TextRange> textRange = issue.getTextRange() == null
+          ? Optional.empty()
+          : Finders.getTextRange(document, issue.getTextRange());
+      final int ijLine = line > 0 ? line - 1 : 0;
+      if (textRange.isPresent()) {
+        positions.issues.put(issue, new TrackedIssue(
+            document.createRangeMarker(textRange.get()),
+            document.getLineNumber(textRange.get().getStartOffset()),
+            true
+        ));
+      } else if (ijLine < document.getLineCount()) {
+        positions.issues.put(issue, new TrackedIssue(
+            document.createRangeMarker(document.getLineStartOffset(ijLine), document.getLineEndOffset(ijLine)),
+            ijLine,
+            false
+        ));
+      }
+    }
+  }
+
+  /**
+   * stops tracking the issues whose text was deleted from the document of the file
+   *
+   * @return the deleted issues
+   */
+  public synchronized Set<SonarIssue> removeDeleted(@NotNull String path) {
+    final DocumentPositions positions = positionsByFile.get(path);
+    if (positions == null) {
+      return Collections.emptySet();
+    }
+    final Set<SonarIssue> deletedIssues = new HashSet<>();
+    positions.issues.forEach((issue, trackedIssue) -> {
+      if (!trackedIssue.marker.isValid()) {
+        deletedIssues.add(issue);
+      }
+    });
+    deletedIssues.forEach(issue -> positions.issues.remove(issue).marker.dispose());
+    return deletedIssues;
+  }
+
+  /**
+   * forgets the markers of the files, like {@link #forget(Collection)}, after placing the issues that moved where they
+   * are now
+   *
+   * @return the moved issues, by path and the issue as reported
+   */
+  public synchronized Map<String, Map<SonarIssue, SonarIssue>> forgetMoved(@NotNull Collection<String> paths) {
+    final Map<String, Map<SonarIssue, SonarIssue>> movedIssuesByPath = new HashMap<>();
+    for (String path : paths) {
+      final DocumentPositions positions = positionsByFile.get(path);
+      if (positions == null) {
+        continue;
+      }
+      final Map<SonarIssue, SonarIssue> movedIssues = new HashMap<>();
+      positions.issues.forEach((issue, trackedIssue) -> moved(positions.document, issue, trackedIssue)
+          .ifPresent(movedIssue -> movedIssues.put(issue, movedIssue)));
+      if (!movedIssues.isEmpty()) {
+        movedIssuesByPath.put(path, movedIssues);
+      }
+    }
+    forget(paths);
+    return movedIssuesByPath;
+  }
+
+  /**
+   * @return the issue at the line and text range it is at now, empty if it has not moved or its text was deleted
+   */
+  private static Optional<SonarIssue> moved(Document document, SonarIssue issue, TrackedIssue trackedIssue) {
+    final RangeMarker marker = trackedIssue.marker;
+    if (!marker.isValid()) {
+      return Optional.empty();
+    }
+    final int line = issue.getLine() + document.getLineNumber(marker.getStartOffset()) - trackedIssue.markedLine;
+    IssueTextRange textRange = issue.getTextRange();
+    if (trackedIssue.coversTextRange) {
+      // an emptied range is no longer highlighted, so the issue falls back to its line like in getTextRange
+      textRange = marker.getStartOffset() < marker.getEndOffset()
+          ? toIssueTextRange(document, marker.getStartOffset(), marker.getEndOffset())
+          : null;
+    }
+    if (line == issue.getLine() && Objects.equals(textRange, issue.getTextRange())) {
+      return Optional.empty();
+    }
+    return Optional.of(new SonarIssue(
+        issue.getKey(),
+        issue.getRuleKey(),
+        line,
+        issue.getMessage(),
+        issue.getSeverity(),
+        issue.getIsNew(),
+        textRange
+    ));
+  }
+
+  private static IssueTextRange toIssueTextRange(Document document, int startOffset, int endOffset) {
+    final int startLine = document.getLineNumber(startOffset);
+    final int endLine = document.getLineNumber(endOffset);
+    return new IssueTextRange(
+        startLine + 1,
+        startOffset - document.getLineStartOffset(startLine),
+        endLine + 1,
+        endOffset - document.getLineStartOffset(endLine)
+    );
+  }
+
+  public synchronized Set<String> getTrackedPaths() {
+    return new HashSet<>(positionsByFile.keySet());
+  }
+
+  public synchronized void forget(@NotNull Collection<String> paths) {
+    for (String path : paths) {
+      final DocumentPositions positions = positionsByFile.remove(path);
+      if (positions != null) {
+        positions.issues.values().forEach(trackedIssue -> trackedIssue.marker.dispose());
+      }
+    }
+  }
+
+  public synchronized void clear() {
+    forget(new ArrayList<>(positionsByFile.keySet()));
+  }
+
+  @Override
+  public void dispose() {
+    clear();
+  }
+
+  private static class DocumentPositions {
+
+    private final Document document;
+    private final Map<SonarIssue, TrackedIssue> issues = new HashMap<>();
+
+    DocumentPositions(Document document) {
+      this.document = document;
+    }
+  }
+
+  private static class TrackedIssue {
+
+    private final RangeMarker marker;
+    // the line of the document the marker started at when it was created
+    private final int markedLine;
+    private final boolean coversTextRange;
+
+    TrackedIssue(RangeMarker marker, int markedLine, boolean coversTextRange) {
+      this.marker = marker;
+      this.markedLine = markedLine;
+      this.coversTextRange = coversTextRange;
+    }
+  }
+}
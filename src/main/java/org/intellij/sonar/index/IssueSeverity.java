@@ -0,0 +1,31 @@
+package org.intellij.sonar.index;
+
+import java.util.Optional;
+
+/**
+ * severities of sonar issues
+ */
+public enum IssueSeverity {
+  INFO,
+  MINOR,
+  MAJOR,
+  CRITICAL,
+  BLOCKER;
+
+  private static final IssueSeverity[] VALUES = values();
+
+  /**
+   * @return the severity of the name, or empty for null or unknown names
+   */
+  public static Optional<IssueSeverity> of(String name) {
+    if (name == null) {
+      return Optional.empty();
+    }
+    for (IssueSeverity severity : VALUES) {
+      if (severity.name().equals(name)) {
+        return Optional.of(severity);
+      }
+    }
+    return Optional.empty();
+  }
+}
@@ -0,0 +1,68 @@
+package org.intellij.sonar.index;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * the text an issue was reported for, as reported by the server: lines start at 1, the offsets are the columns within
+ * the lines starting at 0 and the end is exclusive
+ */
+public final class IssueTextRange {
+
+  private final int startLine;
+  private final int startLineOffset;
+  private final int endLine;
+  private final int endLineOffset;
+
+  public IssueTextRange(int startLine, int startLineOffset, int endLine, int endLineOffset) {
+    this.startLine = startLine;
+    this.startLineOffset = startLineOffset;
+    this.endLine = endLine;
+    this.endLineOffset = endLineOffset;
+  }
+
+  public int getStartLine() {
+    return startLine;
+  }
+
+  public int getStartLineOffset() {
+    return startLineOffset;
+  }
+
+  public int getEndLine() {
+    return endLine;
+  }
+
+  public int getEndLineOffset() {
+    return endLineOffset;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    IssueTextRange that = (IssueTextRange) o;
+    return startLine == that.startLine &&
+        startLineOffset == that.startLineOffset &&
+        endLine == that.endLine &&
+        endLineOffset == that.endLineOffset;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * (31 * (31 * startLine + startLineOffset) + endLine) + endLineOffset;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(IssueTextRange.class.getName())
+        .add("startLine", startLine)
+        .add("startLineOffset", startLineOffset)
+        .add("endLine", endLine)
+        .add("endLineOffset", endLineOffset)
+        .toString();
+  }
+}
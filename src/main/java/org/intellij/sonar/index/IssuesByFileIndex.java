@@ -1,14 +1,19 @@
 package org.intellij.sonar.index;
 
 import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 import com.intellij.openapi.project.Project;
 import com.intellij.psi.PsiFile;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 import org.intellij.sonar.persistence.IssuesByFileIndexProjectService;
+import org.intellij.sonar.persistence.IssuesIndexSnapshot;
 
 public class IssuesByFileIndex {
 
@@ -23,20 +28,150 @@ public class IssuesByFileIndex {
     }
   }
 
-  public static Set<SonarIssue> getIssuesForFile(PsiFile psiFile) {
-    String fullPath = psiFile.getVirtualFile().getPath();
-    Project project = psiFile.getProject();
-    final Map<String, Set<SonarIssue>> index = getIndex(project);
-    Set<SonarIssue> issues = index.get(fullPath);
-    if (issues == null) {
-      issues = Sets.newLinkedHashSet();
+  /**
+   * @return the latest version of the index, empty if the project has no index
+   */
+  public static Optional<IssuesIndexSnapshot> getSnapshot(Project project) {
+    return IssuesByFileIndexProjectService.getInstance(project).map(IssuesByFileIndexProjectService::getSnapshot);
+  }
+
+  public static FileIssues getIssuesForFile(PsiFile psiFile) {
+    return getSnapshot(psiFile.getProject())
+        .map(snapshot -> getIssuesForFile(psiFile, snapshot))
+        .orElse(FileIssues.EMPTY);
+  }
+
+  public static FileIssues getIssuesForFile(PsiFile psiFile, IssuesIndexSnapshot snapshot) {
+    final Set<SonarIssue> issues = snapshot.getIssues(psiFile.getVirtualFile().getPath());
+    return issues == null ? FileIssues.EMPTY : FileIssues.of(issues);
+  }
+
+  /**
+   * applies the changes to the next version of the index and publishes them all at once
+   */
+  private static void update(Project project, Consumer<Map<String, Set<SonarIssue>>> changes) {
+    final Optional<IssuesByFileIndexProjectService> indexService = IssuesByFileIndexProjectService.getInstance(project);
+    if (indexService.isPresent()) {
+      indexService.get().update(changes);
+    } else {
+      changes.accept(Maps.newHashMap());
+    }
+  }
+
+  /**
+   * puts the issues of the files that moved while the files were edited into the index where they are now and forgets
+   * their markers, so that the issues keep their positions once the documents are released
+   */
+  public static void keepPositionsOf(Project project, Collection<String> paths) {
+    final Map<String, Map<SonarIssue, SonarIssue>> movedIssuesByPath = IssuePositions.getInstance(project)
+        .forgetMoved(paths);
+    if (movedIssuesByPath.isEmpty()) {
+      return;
     }
-    return issues;
+    update(project, index -> movedIssuesByPath.forEach((path, movedIssues) -> {
+      final Set<SonarIssue> issues = index.get(path);
+      if (issues != null) {
+        final Set<SonarIssue> currentIssues = new LinkedHashSet<>(issues.size());
+        issues.forEach(issue -> currentIssues.add(movedIssues.getOrDefault(issue, issue)));
+        index.put(path, FileIssues.of(currentIssues));
+      }
+    }));
   }
 
+  /**
+   * removes the issues of the files from the index. As the index then no longer holds the downloaded issues of the
+   * files, they are marked as unsynced until their issues are downloaded again.
+   */
   public static void clearIndexFor(Collection<PsiFile> psiFiles) {
-    for (PsiFile psiFile : psiFiles) {
-      getIndex(psiFile.getProject()).remove(psiFile.getVirtualFile().getPath());
+    psiFiles.stream()
+        .findFirst()
+        .ifPresent(first -> update(first.getProject(), index -> {
+          for (PsiFile psiFile : psiFiles) {
+            index.remove(psiFile.getVirtualFile().getPath());
+          }
+        }));
+    psiFiles.stream()
+        .findFirst()
+        .filter(psiFile -> !psiFile.getProject().isDisposed())
+        .ifPresent(psiFile -> IssuePositions.getInstance(psiFile.getProject()).forget(
+            psiFiles.stream().map(it -> it.getVirtualFile().getPath()).collect(Collectors.toList())
+        ));
+    psiFiles.stream()
+        .findFirst()
+        .flatMap(psiFile -> IssuesByFileIndexProjectService.getInstance(psiFile.getProject()))
+        .ifPresent(indexService -> indexService.markUnsynced(
+            psiFiles.stream().map(it -> it.getVirtualFile().getPath()).collect(Collectors.toList())
+        ));
+  }
+
+  /**
+   * @return the files whose downloaded issues were removed from the index or replaced since they were downloaded
+   */
+  public static List<PsiFile> getUnsyncedFiles(Collection<PsiFile> psiFiles) {
+    final Set<String> unsyncedPaths = psiFiles.stream()
+        .findFirst()
+        .flatMap(psiFile -> IssuesByFileIndexProjectService.getInstance(psiFile.getProject()))
+        .map(IssuesByFileIndexProjectService::getUnsyncedPaths)
+        .orElse(Collections.emptySet());
+    if (unsyncedPaths.isEmpty()) {
+      return Collections.emptyList();
+    }
+    return psiFiles.stream()
+        .filter(psiFile -> unsyncedPaths.contains(psiFile.getVirtualFile().getPath()))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * removes the issues with the obsolete keys from the index and adds the issues to the files, leaving all other issues of
+   * the index untouched. Only the files having issues with the obsolete keys are looked at, as found by their keys.
+   */
+  public static void mergeIssues(
+      Project project,
+      Map<String, Set<SonarIssue>> issuesByFile,
+      Set<String> obsoleteIssueKeys
+  ) {
+    final Set<String> changedPaths = new LinkedHashSet<>(issuesByFile.keySet());
+    final Optional<IssuesByFileIndexProjectService> indexService = IssuesByFileIndexProjectService.getInstance(project);
+    update(project, index -> {
+      // looked up while the index is being updated, so no other change comes in between
+      final Set<String> obsoletePaths = obsoleteIssueKeys.isEmpty() || !indexService.isPresent()
+          ? Collections.emptySet()
+          : indexService.get().getPathsOfIssues(obsoleteIssueKeys);
+      mergeIssues(index, issuesByFile, obsoleteIssueKeys, obsoletePaths, changedPaths);
+    });
+    if (!project.isDisposed()) {
+      IssuePositions.getInstance(project).forget(changedPaths);
     }
   }
+
+  private static void mergeIssues(
+      Map<String, Set<SonarIssue>> index,
+      Map<String, Set<SonarIssue>> issuesByFile,
+      Set<String> obsoleteIssueKeys,
+      Set<String> obsoletePaths,
+      Set<String> changedPaths
+  ) {
+    for (String path : obsoletePaths) {
+      final Set<SonarIssue> issues = index.get(path);
+      if (issues == null) {
+        continue;
+      }
+      final Set<SonarIssue> remainingIssues = issues.stream()
+          .filter(issue -> !obsoleteIssueKeys.contains(issue.getKey()))
+          .collect(Collectors.toCollection(LinkedHashSet::new));
+      changedPaths.add(path);
+      if (remainingIssues.isEmpty()) {
+        index.remove(path);
+      } else {
+        index.put(path, FileIssues.of(remainingIssues));
+      }
+    }
+    issuesByFile.forEach(
+        (path, issues) -> index.merge(path, issues, (existingIssues, addedIssues) -> {
+          final Set<SonarIssue> mergedIssues = new LinkedHashSet<>(existingIssues);
+          mergedIssues.addAll(addedIssues);
+          return FileIssues.of(mergedIssues);
+        })
+    );
+  }
 }
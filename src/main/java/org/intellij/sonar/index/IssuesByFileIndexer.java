@@ -1,35 +1,50 @@
 package org.intellij.sonar.index;
 
-import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
+import com.intellij.concurrency.JobLauncher;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.psi.PsiFile;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import org.intellij.sonar.console.SonarConsole;
+import org.intellij.sonar.persistence.ResolvedComponents;
+import org.intellij.sonar.persistence.ResolvedComponentsProjectService;
 import org.intellij.sonar.persistence.Resource;
 import org.intellij.sonar.persistence.Settings;
 import org.intellij.sonar.sonarreport.data.Issue;
 import org.intellij.sonar.util.ProgressIndicatorUtil;
-import org.intellij.sonar.util.SonarComponentToFileMatcher;
+import org.intellij.sonar.util.SonarComponentKeys;
+import org.intellij.sonar.util.SonarComponentToFileIndex;
+import org.sonarqube.ws.Common;
 import org.sonarqube.ws.Issues;
 
 public class IssuesByFileIndexer {
 
+  private static final int PROGRESS_INTERVAL = 100;
+  private static final String NO_RESOURCE = "";
+
   private final List<PsiFile> files;
   private List<Issue> issues;
   private SonarConsole sonarConsole;
+  private boolean progressReporting = true;
+  private boolean allProjectFiles;
+  private Map<String, ResourceFiles> filesByResourceKey;
 
   public IssuesByFileIndexer(List<PsiFile> files) {
     this.files = files;
@@ -49,22 +64,48 @@ public class IssuesByFileIndexer {
     return this;
   }
 
-  public IssuesByFileIndexer withSonarServerIssues(ImmutableList<Issues.Issue> issues) {
-    setIssues(
-        issues.stream().map(issue -> new Issue(
-            issue.getKey(),
-            issue.getComponent(),
-            issue.getLine(),
-            issue.getMessage(),
-            issue.getSeverity().name(),
-            issue.getRule(),
-            issue.getStatus(),
-            false // issues from sonar server cannot be new
-        )).collect(Collectors.toList())
-    );
+  /**
+   * whether the indexer reports its progress to the progress indicator and the console. Callers indexing many small
+   * batches report the progress themselves.
+   */
+  public IssuesByFileIndexer withProgressReporting(boolean progressReporting) {
+    this.progressReporting = progressReporting;
     return this;
   }
 
+  /**
+   * whether the files are all files of the project. Only then the components resolved against them are remembered for
+   * later runs, which look up the remembered files among their own files.
+   */
+  public IssuesByFileIndexer withAllProjectFiles(boolean allProjectFiles) {
+    this.allProjectFiles = allProjectFiles;
+    return this;
+  }
+
+  public IssuesByFileIndexer withSonarServerIssues(List<Issues.Issue> issues) {
+    setIssues(issues.stream().map(IssuesByFileIndexer::toIssue).collect(Collectors.toList()));
+    return this;
+  }
+
+  private static Issue toIssue(Issues.Issue issue) {
+    final boolean hasTextRange = issue.hasTextRange();
+    final Common.TextRange textRange = issue.getTextRange();
+    return new Issue(
+        issue.getKey(),
+        issue.getComponent(),
+        issue.getLine(),
+        hasTextRange ? textRange.getStartLine() : null,
+        hasTextRange ? textRange.getStartOffset() : null,
+        hasTextRange ? textRange.getEndLine() : null,
+        hasTextRange ? textRange.getEndOffset() : null,
+        issue.getMessage(),
+        issue.getSeverity().name(),
+        issue.getRule(),
+        issue.getStatus(),
+        false // issues from sonar server cannot be new
+    );
+  }
+
   public Map<String, Set<SonarIssue>> create() {
     return new SonarIssuesIndexBuilder()
         .buildIndex()
@@ -72,116 +113,198 @@ public class IssuesByFileIndexer {
   }
 
 
-  private class SonarIssuesIndexBuilder {
-
-    private Map<String, Set<SonarIssue>> index;
-    private int filesCount;
-    private AtomicInteger fileIndex;
-    private ProgressIndicator indicator;
+  /**
+   * @return the files of each resource configured for the files, with the files having no resources configured under
+   * an empty key. They are grouped once, so an indexer can index many batches of issues for the same files.
+   */
+  private Map<String, ResourceFiles> getFilesByResourceKey(ProgressIndicator indicator) {
+    if (filesByResourceKey != null) {
+      return filesByResourceKey;
+    }
+    final Map<String, Queue<String>> filePathsByResourceKey = new ConcurrentHashMap<>();
+    // the settings of the files are looked up on the shared pool of the IDE, which splits the files adaptively
+    final boolean grouped = JobLauncher.getInstance().invokeConcurrentlyUnderProgress(files, indicator, psiFile -> {
+      final Settings settings = ReadAction.compute(() -> Settings.getSettingsFor(psiFile));
+      if (settings == null) {
+        return true;
+      }
+      final String fullFilePath = psiFile.getVirtualFile().getPath();
+      final Collection<Resource> resources = settings.getResources();
+      if (resources == null || resources.isEmpty()) {
+        filePathsByResourceKey.computeIfAbsent(NO_RESOURCE, key -> new ConcurrentLinkedQueue<>()).add(fullFilePath);
+      } else {
+        for (Resource resource : resources) {
+          filePathsByResourceKey.computeIfAbsent(resource.getKey(), key -> new ConcurrentLinkedQueue<>())
+              .add(fullFilePath);
+        }
+      }
+      return true;
+    });
+    if (!grouped) {
+      return Collections.emptyMap();
+    }
+    final Optional<ResolvedComponentsProjectService> resolvedComponentsService = files.stream()
+        .findFirst()
+        .flatMap(psiFile -> ResolvedComponentsProjectService.getInstance(psiFile.getProject()));
+    filesByResourceKey = Maps.newLinkedHashMap();
+    filePathsByResourceKey.forEach((resourceKey, queuedFilePaths) -> {
+      final ResolvedComponents resolvedComponents = resolvedComponentsService
+          .map(service -> service.getResolvedComponents(resourceKey))
+          .orElseGet(ResolvedComponents::new);
+      final Set<String> filePaths = new HashSet<>(queuedFilePaths);
+      filesByResourceKey.put(
+          resourceKey, new ResourceFiles(resourceKey, filePaths, resolvedComponents, allProjectFiles)
+      );
+    });
+    return filesByResourceKey;
+  }
 
-    public SonarIssuesIndexBuilder buildIndex() {
-      filesCount = files.size();
-      fileIndex = new AtomicInteger(0);
+  /**
+   * the files of a resource. Components are looked up in the components resolved by earlier runs first, the index of
+   * the file paths is only created for components seen for the first time. Components may be resolved concurrently.
+   * Components resolving to one file tell how the component keys of the files of the resource start.
+   */
+  private static class ResourceFiles {
 
-      indicator = ProgressManager.getInstance().getProgressIndicator();
-      final int availableProcessors = Runtime.getRuntime().availableProcessors();
-
-      info(
-          String.format(
-              "Start processing %d files and %d issues with %d threads",
-              filesCount,
-              issues.size(),
-              availableProcessors
-          )
-      );
+    private final String resourceKey;
+    private final Set<String> filePaths;
+    private final ResolvedComponents resolvedComponents;
+    private final boolean rememberResolvedComponents;
+    private SonarComponentToFileIndex fileIndex;
 
-      final ExecutorService executorService = Executors.newFixedThreadPool(availableProcessors);
-      final Iterable<List<PsiFile>> filePartitions = Iterables.partition(files, availableProcessors);
+    ResourceFiles(
+        String resourceKey,
+        Set<String> filePaths,
+        ResolvedComponents resolvedComponents,
+        boolean rememberResolvedComponents
+    ) {
+      this.resourceKey = resourceKey;
+      this.filePaths = filePaths;
+      this.resolvedComponents = resolvedComponents;
+      this.rememberResolvedComponents = rememberResolvedComponents;
+    }
 
-      index = Maps.newConcurrentMap();
-      for (final List<PsiFile> partition : filePartitions) {
-        executorService.execute(() -> createIndexFor(partition));
+    List<String> findFiles(String component) {
+      final List<String> rememberedFiles = resolvedComponents.getFilesByComponent().get(component);
+      final List<String> files;
+      if (rememberedFiles == null) {
+        files = resolve(component);
+        if (rememberResolvedComponents) {
+          resolvedComponents.getFilesByComponent().put(component, files);
+        }
+      } else {
+        // remembered for all files of the project, of which only the files to index count
+        files = rememberedFiles.stream().filter(filePaths::contains).collect(Collectors.toList());
       }
-      executorService.shutdown();
-      try {
-        executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-      } catch (InterruptedException e) {
-        sonarConsole.error(Throwables.getStackTraceAsString(e));
+      if (files.size() == 1) {
+        SonarComponentKeys.prefixesOf(component, files.get(0)).ifPresent(
+            prefixes -> resolvedComponents.getKeyPrefixByPathPrefix().put(prefixes.getKey(), prefixes.getValue())
+        );
       }
-      return this;
+      return files;
     }
 
-    private void createIndexFor(List<PsiFile> psiFiles) {
-      for (PsiFile psiFile : psiFiles) {
-        if (indicator.isCanceled()) {
-          break;
-        }
+    private List<String> resolve(String component) {
+      return new ArrayList<>(getFileIndex().findFiles(component));
+    }
 
-        final int currentFileIndex = fileIndex.incrementAndGet();
-        ProgressIndicatorUtil.setFraction(indicator, 1.0 * currentFileIndex / filesCount);
-        ProgressIndicatorUtil.setText2(indicator, psiFile.getName());
-        final String filesProgressMessage = String.format("%d / %d files processed", currentFileIndex, filesCount);
-        ProgressIndicatorUtil.setText(indicator, filesProgressMessage);
+    private synchronized SonarComponentToFileIndex getFileIndex() {
+      if (fileIndex == null) {
+        fileIndex = new SonarComponentToFileIndex(resourceKey, filePaths);
+      }
+      return fileIndex;
+    }
+  }
 
-        if (filesCount % currentFileIndex == 20) {
-          info(filesProgressMessage);
-        }
+  /**
+   * resolves each component of the issues once to the files of the resources, instead of matching every issue against
+   * every file
+   */
+  private class SonarIssuesIndexBuilder {
 
-        String fullFilePath = psiFile.getVirtualFile().getPath();
+    private Map<String, Set<SonarIssue>> index;
+    private ProgressIndicator indicator;
 
-        final Settings settings = Settings.getSettingsFor(psiFile);
-        if (settings == null) {
-          continue;
-        }
+    public SonarIssuesIndexBuilder buildIndex() {
+      indicator = ProgressManager.getInstance().getProgressIndicator();
+      info(String.format("Start processing %d files and %d issues", files.size(), issues.size()));
+      index = Maps.newConcurrentMap();
 
-        final Collection<Resource> resources = settings.getResources();
+      final Map<String, ResourceFiles> filesByResourceKey = getFilesByResourceKey(indicator);
+      final List<String> components = issues.stream()
+          .map(Issue::getComponent)
+          .filter(Objects::nonNull)
+          .distinct()
+          .collect(Collectors.toList());
+      final Map<String, Set<String>> filesByComponent = new ConcurrentHashMap<>();
+      final AtomicInteger resolvedComponentsCount = new AtomicInteger(0);
+      // components are resolved on the shared pool of the IDE, which stops when the indicator gets canceled
+      final boolean resolved = JobLauncher.getInstance().invokeConcurrentlyUnderProgress(
+          components, indicator, component -> {
+            filesByComponent.put(component, findFiles(component, filesByResourceKey));
+            final int resolvedCount = resolvedComponentsCount.incrementAndGet();
+            if (progressReporting && resolvedCount % PROGRESS_INTERVAL == 0) {
+              reportProgress(resolvedCount, components.size());
+            }
+            return true;
+          }
+      );
+      if (!resolved) {
+        return this;
+      }
 
-        final Set<SonarIssue> sonarIssues = buildSonarIssues(fullFilePath, resources);
-        if (!sonarIssues.isEmpty()) {
-          index.put(fullFilePath, sonarIssues);
+      final Map<String, Set<SonarIssue>> issuesByFile = Maps.newLinkedHashMap();
+      for (Issue issue : issues) {
+        final Set<String> matchingFiles = issue.getComponent() == null
+            ? Collections.emptySet()
+            : filesByComponent.get(issue.getComponent());
+        if (matchingFiles.isEmpty()) {
+          continue;
+        }
+        final SonarIssue sonarIssue = new SonarIssue(
+            issue.getKey(),
+            issue.getRule(),
+            issue.getLine(),
+            issue.getMessage(),
+            issue.getSeverity(),
+            issue.getIsNew(),
+            toTextRange(issue)
+        );
+        for (String fullFilePath : matchingFiles) {
+          issuesByFile.computeIfAbsent(fullFilePath, path -> new LinkedHashSet<>()).add(sonarIssue);
         }
       }
+      issuesByFile.forEach((fullFilePath, sonarIssues) -> index.put(fullFilePath, FileIssues.of(sonarIssues)));
+      return this;
     }
 
-    private Set<SonarIssue> buildSonarIssues(
-        String fullFilePath,
-        Collection<Resource> resources) {
-      ImmutableSet.Builder<SonarIssue> entriesBuilder = ImmutableSet.builder();
-      if (resources == null || resources.isEmpty()) {
-        matchFileByResource(fullFilePath, entriesBuilder, null);
-      } else {
-        for (Resource resource : resources) {
-          matchFileByResource(fullFilePath, entriesBuilder, resource.getKey());
-        }
+    private IssueTextRange toTextRange(Issue issue) {
+      if (issue.getStartLine() == null || issue.getStartOffset() == null
+          || issue.getEndLine() == null || issue.getEndOffset() == null) {
+        return null;
       }
-      return entriesBuilder.build();
+      return new IssueTextRange(issue.getStartLine(), issue.getStartOffset(), issue.getEndLine(), issue.getEndOffset());
     }
 
-    private void info(String msg) {
-      if (sonarConsole != null) {
-        sonarConsole.info(msg);
+    private Set<String> findFiles(String component, Map<String, ResourceFiles> filesByResourceKey) {
+      final Set<String> matchingFiles = new LinkedHashSet<>();
+      for (ResourceFiles resourceFiles : filesByResourceKey.values()) {
+        matchingFiles.addAll(resourceFiles.findFiles(component));
       }
+      return matchingFiles;
     }
 
-    private void matchFileByResource(
-        String fullFilePath,
-        ImmutableSet.Builder<SonarIssue> entriesBuilder,
-        String resourceKey
-    ) {
-      for (Issue issue : issues) {
-        String component = issue.getComponent();
-        if (new SonarComponentToFileMatcher().match(component, resourceKey, fullFilePath)) {
-          entriesBuilder.add(
-              new SonarIssue(
-                  issue.getKey(),
-                  issue.getRule(),
-                  issue.getLine(),
-                  issue.getMessage(),
-                  issue.getSeverity(),
-                  issue.getIsNew()
-              )
-          );
-        }
+    private void reportProgress(int resolvedComponentsCount, int componentsCount) {
+      ProgressIndicatorUtil.setFraction(indicator, 1.0 * resolvedComponentsCount / componentsCount);
+      ProgressIndicatorUtil.setText(
+          indicator,
+          String.format("%d / %d SonarQube components processed", resolvedComponentsCount, componentsCount)
+      );
+    }
+
+    private void info(String msg) {
+      if (sonarConsole != null && progressReporting) {
+        sonarConsole.info(msg);
       }
     }
 
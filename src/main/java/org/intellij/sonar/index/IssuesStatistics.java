@@ -0,0 +1,211 @@
+package org.intellij.sonar.index;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * immutable counters of the issues of a version of the index by rule key, by severity and for new issues, each by file
+ * as well. A new version of the index derives its statistics from the former ones by the files that changed, so counts
+ * are read in constant time and the files with issues of a rule, a severity or new issues are found without scanning
+ * all issues.
+ */
+public final class IssuesStatistics {
+
+  public static final IssuesStatistics EMPTY = new IssuesStatistics(0, Facet.EMPTY, Facet.EMPTY, Facet.EMPTY);
+
+  private static final String NO_SEVERITY = "";
+  private static final String NEW = "new";
+
+  private final int issuesCount;
+  private final Facet byRuleKey;
+  private final Facet bySeverity;
+  private final Facet newIssues;
+
+  private IssuesStatistics(int issuesCount, Facet byRuleKey, Facet bySeverity, Facet newIssues) {
+    this.issuesCount = issuesCount;
+    this.byRuleKey = byRuleKey;
+    this.bySeverity = bySeverity;
+    this.newIssues = newIssues;
+  }
+
+  public static IssuesStatistics of(@NotNull Iterator<Map.Entry<String, Set<SonarIssue>>> issuesByFile) {
+    final Builder builder = new Builder(EMPTY);
+    issuesByFile.forEachRemaining(entry -> builder.add(entry.getKey(), entry.getValue(), 1));
+    return builder.build();
+  }
+
+  /**
+   * @param previousIssuesByFile the former issues of the changed files, null for files which had no issues
+   * @param currentIssues        the issues of a changed file now, null for files which have no issues any more
+   */
+  public IssuesStatistics update(
+      @NotNull Map<String, Set<SonarIssue>> previousIssuesByFile,
+      @NotNull Function<String, Set<SonarIssue>> currentIssues
+  ) {
+    final Builder builder = new Builder(this);
+    previousIssuesByFile.forEach((path, previousIssues) -> {
+      builder.add(path, previousIssues, -1);
+      builder.add(path, currentIssues.apply(path), 1);
+    });
+    return builder.build();
+  }
+
+  public int getIssuesCount() {
+    return issuesCount;
+  }
+
+  public int getNewIssuesCount() {
+    return newIssues.getCount(NEW);
+  }
+
+  public int getIssuesCount(@NotNull String ruleKey) {
+    return byRuleKey.getCount(ruleKey);
+  }
+
+  public int getIssuesCount(@Nullable IssueSeverity severity) {
+    return bySeverity.getCount(severityValue(severity == null ? null : severity.name()));
+  }
+
+  /**
+   * @return the number of new issues by the files with new issues
+   */
+  public Map<String, Integer> getNewIssuesCountByFile() {
+    return newIssues.getCountByFile(NEW);
+  }
+
+  public Map<String, Integer> getIssuesCountByFile(@NotNull String ruleKey) {
+    return byRuleKey.getCountByFile(ruleKey);
+  }
+
+  public Map<String, Integer> getIssuesCountByFile(@Nullable IssueSeverity severity) {
+    return bySeverity.getCountByFile(severityValue(severity == null ? null : severity.name()));
+  }
+
+  public Set<String> getRuleKeys() {
+    return byRuleKey.getValues();
+  }
+
+  private static String severityValue(@Nullable String severity) {
+    return severity == null ? NO_SEVERITY : severity;
+  }
+
+  /**
+   * counts of the issues with a value, in total and by file
+   */
+  private static final class Facet {
+
+    static final Facet EMPTY = new Facet(Collections.emptyMap(), Collections.emptyMap());
+
+    private final Map<String, Integer> counts;
+    private final Map<String, Map<String, Integer>> countsByFile;
+
+    private Facet(Map<String, Integer> counts, Map<String, Map<String, Integer>> countsByFile) {
+      this.counts = counts;
+      this.countsByFile = countsByFile;
+    }
+
+    int getCount(String value) {
+      return counts.getOrDefault(value, 0);
+    }
+
+    Map<String, Integer> getCountByFile(String value) {
+      return countsByFile.getOrDefault(value, Collections.emptyMap());
+    }
+
+    Set<String> getValues() {
+      return counts.keySet();
+    }
+  }
+
+  /**
+   * copies the counts of a facet, and the counts by file of a value only once the value changes
+   */
+  private static final class FacetBuilder {
+
+    private final Map<String, Integer> counts;
+    private final Map<String, Map<String, Integer>> countsByFile;
+    private final Set<String> copiedValues = new HashSet<>();
+
+    FacetBuilder(Facet facet) {
+      this.counts = new HashMap<>(facet.counts);
+      this.countsByFile = new HashMap<>(facet.countsByFile);
+    }
+
+    void add(String value, String path, int delta) {
+      if (counts.merge(value, delta, Integer::sum) == 0) {
+        counts.remove(value);
+      }
+      Map<String, Integer> countByFile = countsByFile.get(value);
+      if (copiedValues.add(value)) {
+        countByFile = countByFile == null ? new HashMap<>() : new HashMap<>(countByFile);
+        countsByFile.put(value, countByFile);
+      }
+      if (countByFile.merge(path, delta, Integer::sum) == 0) {
+        countByFile.remove(path);
+      }
+    }
+
+    Facet build() {
+      final Map<String, Map<String, Integer>> builtCountsByFile = new HashMap<>(countsByFile.size());
+      countsByFile.forEach((value, countByFile) -> {
+        if (!countByFile.isEmpty()) {
+          builtCountsByFile.put(
+              value,
+              copiedValues.contains(value) ? Collections.unmodifiableMap(countByFile) : countByFile
+          );
+        }
+      });
+      return new Facet(Collections.unmodifiableMap(counts), Collections.unmodifiableMap(builtCountsByFile));
+    }
+  }
+
+  private static final class Builder {
+
+    private int issuesCount;
+    private final FacetBuilder byRuleKey;
+    private final FacetBuilder bySeverity;
+    private final FacetBuilder newIssues;
+
+    Builder(IssuesStatistics statistics) {
+      this.issuesCount = statistics.issuesCount;
+      this.byRuleKey = new FacetBuilder(statistics.byRuleKey);
+      this.bySeverity = new FacetBuilder(statistics.bySeverity);
+      this.newIssues = new FacetBuilder(statistics.newIssues);
+    }
+
+    void add(String path, @Nullable Set<SonarIssue> issues, int sign) {
+      if (issues == null || issues.isEmpty()) {
+        return;
+      }
+      final Map<String, Integer> countByRuleKey = new HashMap<>();
+      final Map<String, Integer> countBySeverity = new HashMap<>();
+      int newIssuesCount = 0;
+      for (SonarIssue issue : issues) {
+        if (issue.getRuleKey() != null) {
+          countByRuleKey.merge(issue.getRuleKey(), 1, Integer::sum);
+        }
+        countBySeverity.merge(severityValue(issue.getSeverity()), 1, Integer::sum);
+        if (Boolean.TRUE.equals(issue.getIsNew())) {
+          newIssuesCount++;
+        }
+      }
+      issuesCount += sign * issues.size();
+      countByRuleKey.forEach((ruleKey, count) -> byRuleKey.add(ruleKey, path, sign * count));
+      countBySeverity.forEach((severity, count) -> bySeverity.add(severity, path, sign * count));
+      if (newIssuesCount > 0) {
+        newIssues.add(NEW, path, sign * newIssuesCount);
+      }
+    }
+
+    IssuesStatistics build() {
+      return new IssuesStatistics(issuesCount, byRuleKey.build(), bySeverity.build(), newIssues.build());
+    }
+  }
+}
@@ -1,81 +1,147 @@
 package org.intellij.sonar.index;
 
+import com.google.common.base.MoreObjects;
 import com.google.common.base.Objects;
-import com.intellij.util.xmlb.annotations.Transient;
+import com.google.common.collect.ComparisonChain;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.Ordering;
+import java.util.Optional;
 import org.jetbrains.annotations.NotNull;
-
-public class SonarIssue implements Comparable {
-
-  private String key;
-  private String ruleKey;
-  private Integer line;
-  private String message;
-  private String severity;
-  private Boolean isNew;
-
-  public SonarIssue() {
-  }
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * an immutable issue of the index. There are many issues but few distinct rule keys, severities and messages, so the
+ * issue keeps the line and flags as primitives and shares equal rule keys, severities and messages between all issues.
+ * The severity is kept as reported, so severities unknown to {@link IssueSeverity} are not lost.
+ * <p>
+ * Issues are identified by their key, so they stay findable in the sets of the index. Issues without a key, as reported
+ * by some local analyses, are identified by their values apart from their text range. The line and the text range are
+ * where the issue was reported at; where they are now while the file is edited is tracked by {@link IssuePositions}.
+ */
+public final class SonarIssue implements Comparable<SonarIssue> {
+
+  private static final Interner<String> SHARED_STRINGS = Interners.newWeakInterner();
+  private static final Ordering<Comparable> NULLS_FIRST = Ordering.natural().nullsFirst();
+  private static final Ordering<Comparable> NULLS_LAST = Ordering.natural().nullsLast();
+  private static final byte HAS_LINE = 1;
+  private static final byte HAS_IS_NEW = 1 << 1;
+  private static final byte IS_NEW = 1 << 2;
+
+  private final String key;
+  private final String ruleKey;
+  private final String message;
+  private final String severity;
+  private final int line;
+  private final byte flags;
+  private final IssueTextRange textRange;
 
   public SonarIssue(String key, String ruleKey, Integer line, String message, String severity, Boolean isNew) {
+    this(key, ruleKey, line, message, severity, isNew, null);
+  }
+
+  public SonarIssue(
+      String key,
+      String ruleKey,
+      Integer line,
+      String message,
+      String severity,
+      Boolean isNew,
+      @Nullable IssueTextRange textRange
+  ) {
+    this.key = key;
+    this.ruleKey = share(ruleKey);
+    this.message = share(message);
+    this.severity = share(severity);
+    this.line = line == null ? 0 : line;
+    this.flags = (byte) ((line != null ? HAS_LINE : 0)
+        | (isNew != null ? HAS_IS_NEW : 0)
+        | (isNew != null && isNew ? IS_NEW : 0));
+    this.textRange = textRange;
+  }
+
+  SonarIssue(
+      String key,
+      String ruleKey,
+      String message,
+      String severity,
+      int line,
+      byte flags,
+      IssueTextRange textRange
+  ) {
     this.key = key;
     this.ruleKey = ruleKey;
-    this.severity = severity;
     this.message = message;
+    this.severity = severity;
     this.line = line;
-    this.isNew = isNew;
+    this.flags = flags;
+    this.textRange = textRange;
   }
 
-  @Transient
   public String formattedMessage() {
-    return String.format("[%s] %s", this.severity, this.message);
+    return String.format("[%s] %s", getSeverity(), this.message);
   }
 
   public String getKey() {
     return key;
   }
 
-  public void setKey(String key) {
-    this.key = key;
-  }
-
   public String getRuleKey() {
     return ruleKey;
   }
 
-  public void setRuleKey(String ruleKey) {
-    this.ruleKey = ruleKey;
-  }
-
+  /**
+   * @return the line the issue was reported at
+   */
   public Integer getLine() {
-    return line;
-  }
-
-  public void setLine(Integer line) {
-    this.line = line;
+    return hasFlag(HAS_LINE) ? line : null;
   }
 
   public String getMessage() {
     return message;
   }
 
-  public void setMessage(String message) {
-    this.message = message;
-  }
-
   public String getSeverity() {
     return severity;
   }
 
-  public void setSeverity(String severity) {
-    this.severity = severity;
+  /**
+   * @return the severity, empty for issues without severity or with a severity unknown to {@link IssueSeverity}
+   */
+  public Optional<IssueSeverity> getIssueSeverity() {
+    return IssueSeverity.of(severity);
   }
 
   public Boolean getIsNew() {
-    return isNew;
+    return hasFlag(HAS_IS_NEW) ? hasFlag(IS_NEW) : null;
+  }
+
+  /**
+   * @return the text the issue was reported for, null if the analysis did not report it
+   */
+  @Nullable
+  public IssueTextRange getTextRange() {
+    return textRange;
+  }
+
+  int line() {
+    return line;
+  }
+
+  boolean hasLine() {
+    return hasFlag(HAS_LINE);
   }
 
-  public void setIsNew(Boolean isNew) {
-    this.isNew = isNew;
+  byte flags() {
+    return flags;
+  }
+
+  private boolean hasFlag(byte flag) {
+    return (flags & flag) != 0;
+  }
+
+  private static String share(String s) {
+    return s == null ? null : SHARED_STRINGS.intern(s);
   }
 
   @Override
@@ -87,21 +153,49 @@ public class SonarIssue implements Comparable {
       return false;
     }
     SonarIssue that = (SonarIssue) o;
-    return Objects.equal(line, that.line) &&
+    if (key != null || that.key != null) {
+      return Objects.equal(key, that.key);
+    }
+    return line == that.line &&
+        flags == that.flags &&
+        Objects.equal(ruleKey, that.ruleKey) &&
         Objects.equal(message, that.message) &&
-        Objects.equal(severity, that.severity) &&
-        Objects.equal(isNew, that.isNew);
+        Objects.equal(severity, that.severity);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hashCode(line, message, severity, isNew);
+    return key != null
+        ? key.hashCode()
+        : Objects.hashCode(line, flags, ruleKey, message, severity);
+  }
+
+  /**
+   * orders issues with keys by key before the issues without keys, which are ordered by their values
+   */
+  @Override
+  public int compareTo(@NotNull SonarIssue that) {
+    if (key != null || that.key != null) {
+      return NULLS_LAST.compare(key, that.key);
+    }
+    return ComparisonChain.start()
+        .compare(getLine(), that.getLine(), NULLS_FIRST)
+        .compare(ruleKey, that.ruleKey, NULLS_FIRST)
+        .compare(message, that.message, NULLS_FIRST)
+        .compare(severity, that.severity, NULLS_FIRST)
+        .compare(flags, that.flags)
+        .result();
   }
 
   @Override
-  public int compareTo(@NotNull Object that) {
-    return Objects.equal(this, that)
-        ? 0
-        : -1;
+  public String toString() {
+    return MoreObjects.toStringHelper(SonarIssue.class.getName())
+        .add("key", key)
+        .add("ruleKey", ruleKey)
+        .add("line", getLine())
+        .add("severity", getSeverity())
+        .add("isNew", getIsNew())
+        .add("textRange", textRange)
+        .toString();
   }
 }
@@ -0,0 +1,195 @@
+package org.intellij.sonar.persistence;
+
+import com.google.common.collect.Iterators;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import org.intellij.sonar.index.SonarIssue;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * the issues index as map over the latest published {@link IssuesIndexSnapshot}. Reads go to the latest version without
+ * locking, every change builds the next version and publishes it at once. The index remembers the files whose issues
+ * were put or removed since the changes were last taken, so only those files need to be stored again.
+ */
+class ChangeTrackingIndex extends AbstractMap<String, Set<SonarIssue>> {
+
+  private final AtomicReference<IssuesIndexSnapshot> latest;
+  private final Set<String> changedPaths = ConcurrentHashMap.newKeySet();
+  // the files of the issues by issue key, built on first use and kept up to date by every change after
+  private Map<String, String> pathsByIssueKey;
+
+  ChangeTrackingIndex(Map<String, Set<SonarIssue>> index) {
+    this(null, index);
+  }
+
+  /**
+   * @param storedChanges the changes stored since the snapshot, files removed since marked as
+   *                      {@link IssuesIndexSnapshot#REMOVED}
+   */
+  ChangeTrackingIndex(MappedIssuesSnapshot snapshot, Map<String, Set<SonarIssue>> storedChanges) {
+    this.latest = new AtomicReference<>(
+        new IssuesIndexSnapshot(0, snapshot, LayeredChanges.of(storedChanges))
+    );
+  }
+
+  IssuesIndexSnapshot getSnapshot() {
+    return latest.get();
+  }
+
+  /**
+   * applies the changes to the next version of the index and publishes it, so readers see all of the changes or none.
+   * Changes are applied one after the other.
+   */
+  synchronized void update(Consumer<Map<String, Set<SonarIssue>>> changes) {
+    final IssuesIndexSnapshot.Builder next = latest.get().toBuilder(changedPaths);
+    changes.accept(next);
+    if (pathsByIssueKey != null) {
+      next.updatePathsByIssueKey(pathsByIssueKey);
+    }
+    latest.set(next.build());
+  }
+
+  /**
+   * @return the files of the latest version having issues with the keys, looked up without going through the issues of
+   * all files
+   */
+  synchronized Set<String> getPathsOfIssues(Collection<String> issueKeys) {
+    if (pathsByIssueKey == null) {
+      pathsByIssueKey = new HashMap<>();
+      latest.get().entries().forEachRemaining(
+          entry -> IssuesIndexSnapshot.putPathsByIssueKey(pathsByIssueKey, entry.getKey(), entry.getValue())
+      );
+    }
+    final Set<String> paths = new LinkedHashSet<>();
+    for (String issueKey : issueKeys) {
+      final String path = pathsByIssueKey.get(issueKey);
+      if (path != null) {
+        paths.add(path);
+      }
+    }
+    return paths;
+  }
+
+  /**
+   * puts the latest version on top of a new stored snapshot of an earlier version, so only the files changed since that
+   * version are kept as changes. The issues of the files stay the same, so the version does not change.
+   */
+  synchronized void rebase(IssuesIndexSnapshot storedVersion, MappedIssuesSnapshot newStoredSnapshot) {
+    final IssuesIndexSnapshot rebased = latest.get().rebase(storedVersion, newStoredSnapshot);
+    if (rebased != null) {
+      latest.set(rebased);
+    }
+  }
+
+  @Override
+  public Set<SonarIssue> get(Object path) {
+    return path instanceof String ? latest.get().getIssues((String) path) : null;
+  }
+
+  @Override
+  public boolean containsKey(Object path) {
+    return get(path) != null;
+  }
+
+  @Override
+  public Set<SonarIssue> put(String path, Set<SonarIssue> issues) {
+    final List<Set<SonarIssue>> previousIssues = new ArrayList<>(1);
+    update(index -> previousIssues.add(index.put(path, issues)));
+    return previousIssues.get(0);
+  }
+
+  @Override
+  public Set<SonarIssue> remove(Object path) {
+    final List<Set<SonarIssue>> previousIssues = new ArrayList<>(1);
+    update(index -> previousIssues.add(index.remove(path)));
+    return previousIssues.get(0);
+  }
+
+  @Override
+  public void putAll(@NotNull Map<? extends String, ? extends Set<SonarIssue>> issuesByPath) {
+    update(index -> index.putAll(issuesByPath));
+  }
+
+  @Override
+  public void clear() {
+    update(Map::clear);
+  }
+
+  @Override
+  public int size() {
+    return latest.get().size();
+  }
+
+  /**
+   * @return the files of the version published when iterating starts
+   */
+  @NotNull
+  @Override
+  public Set<String> keySet() {
+    return new AbstractSet<>() {
+
+      @Override
+      public Iterator<String> iterator() {
+        return Iterators.unmodifiableIterator(latest.get().paths());
+      }
+
+      @Override
+      public boolean contains(Object path) {
+        return containsKey(path);
+      }
+
+      @Override
+      public int size() {
+        return ChangeTrackingIndex.this.size();
+      }
+    };
+  }
+
+  /**
+   * @return the entries of the version published when iterating starts
+   */
+  @NotNull
+  @Override
+  public Set<Entry<String, Set<SonarIssue>>> entrySet() {
+    return new AbstractSet<>() {
+
+      @Override
+      public Iterator<Entry<String, Set<SonarIssue>>> iterator() {
+        return Iterators.unmodifiableIterator(latest.get().entries());
+      }
+
+      @Override
+      public int size() {
+        return ChangeTrackingIndex.this.size();
+      }
+    };
+  }
+
+  void markAllChanged() {
+    latest.get().paths().forEachRemaining(changedPaths::add);
+  }
+
+  void markChanged(Collection<String> paths) {
+    changedPaths.addAll(paths);
+  }
+
+  /**
+   * @return the files changed since the last call
+   */
+  Collection<String> takeChangedPaths() {
+    final List<String> paths = new ArrayList<>(changedPaths);
+    changedPaths.removeAll(paths);
+    return paths;
+  }
+}
@@ -0,0 +1,84 @@
+package org.intellij.sonar.persistence;
+
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleUtil;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.SimpleModificationTracker;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * remembers the settings of each module enriched with the project settings, so files are resolved to their settings
+ * without copying and enriching the settings again for every file. The settings are computed again after the module or
+ * the project settings changed.
+ */
+public class EffectiveSettingsCache {
+
+  private static final SimpleModificationTracker SETTINGS_CHANGES = new SimpleModificationTracker();
+
+  private final Project project;
+  private final Map<Module, Optional<Settings>> settingsByModule = new ConcurrentHashMap<>();
+  private volatile Optional<Settings> projectSettings;
+  private volatile long settingsModificationCount = -1;
+
+  public EffectiveSettingsCache(Project project) {
+    this.project = project;
+  }
+
+  public static EffectiveSettingsCache getInstance(@NotNull Project project) {
+    return project.getService(EffectiveSettingsCache.class);
+  }
+
+  /**
+   * to be called whenever module or project settings are loaded
+   */
+  public static void settingsChanged() {
+    SETTINGS_CHANGES.incModificationCount();
+  }
+
+  /**
+   * @return the enriched settings of the module of the file, shared between all files of the module and therefore not to
+   * be modified
+   */
+  @Nullable
+  public Settings getSettingsFor(@NotNull PsiFile psiFile) {
+    dropIfSettingsChanged();
+    final VirtualFile virtualFile = psiFile.getVirtualFile();
+    if (null == virtualFile) {
+      Optional<Settings> settings = projectSettings;
+      if (settings == null) {
+        settings = enrich(ProjectSettings.getInstance(project).getState());
+        projectSettings = settings;
+      }
+      return settings.orElse(null);
+    }
+    final Module module = ModuleUtil.findModuleForFile(virtualFile, project);
+    if (null == module) {
+      return null;
+    }
+    return settingsByModule.computeIfAbsent(module, it -> enrich(ModuleSettings.getInstance(it).getState()))
+        .orElse(null);
+  }
+
+  public void clear() {
+    settingsByModule.clear();
+    projectSettings = null;
+  }
+
+  private void dropIfSettingsChanged() {
+    final long modificationCount = SETTINGS_CHANGES.getModificationCount();
+    if (settingsModificationCount != modificationCount) {
+      clear();
+      settingsModificationCount = modificationCount;
+    }
+  }
+
+  private Optional<Settings> enrich(@Nullable Settings settings) {
+    return Optional.ofNullable(settings).map(it -> it.enrichWithProjectSettings(project));
+  }
+}
@@ -1,18 +1,32 @@
 package org.intellij.sonar.persistence;
 
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.components.PersistentStateComponent;
 import com.intellij.openapi.components.State;
 import com.intellij.openapi.components.Storage;
 import com.intellij.openapi.project.Project;
-import com.intellij.util.xmlb.XmlSerializerUtil;
+import java.nio.file.Paths;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import org.intellij.sonar.index.FileIssues;
 import org.intellij.sonar.index.SonarIssue;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+/**
+ * the issues index of the project. The index is stored in a binary format in the system directory of the IDE and mapped
+ * into memory on first access, with only the files changed since the last save written again, next to the files marked
+ * unsynced. The sync marks stay in sonarIssues.xml, from which an index stored as xml by former versions is taken over
+ * once.
+ */
 @State(
     name = "issues",
     storages = {
@@ -20,11 +34,21 @@ import org.jetbrains.annotations.Nullable;
     }
 )
 public class IssuesByFileIndexProjectService
-    implements PersistentStateComponent<IssuesByFileIndexProjectService> {
+    implements PersistentStateComponent<IssuesByFileIndexProjectService.IssuesState>, Disposable {
 
-  private Map<String, Set<SonarIssue>> index = new HashMap<>();
+  private final IssuesIndexStorage storage;
+  private volatile ChangeTrackingIndex index;
+  private IssuesState state = new IssuesState();
+  // guarded by this, loaded with the index
+  private Set<String> unsyncedPaths;
+  // marked synced since the index was last stored, so still stored as unsynced, guarded by this
+  private final Set<String> syncedPathsToStore = new HashSet<>();
+  private boolean unsyncedPathsChanged;
 
-  public IssuesByFileIndexProjectService() {
+  public IssuesByFileIndexProjectService(Project project) {
+    this.storage = new IssuesIndexStorage(
+        Paths.get(PathManager.getSystemPath(), "sonar-intellij-plugin", "issues", project.getLocationHash())
+    );
   }
 
   public static Optional<IssuesByFileIndexProjectService> getInstance(@NotNull Project project) {
@@ -34,23 +58,230 @@ public class IssuesByFileIndexProjectService
     return Optional.ofNullable(project.getService(IssuesByFileIndexProjectService.class));
   }
 
+  /**
+   * stores the files changed in the index since the last save, as the state is taken whenever the project is saved
+   */
   @Nullable
   @Override
-  public IssuesByFileIndexProjectService getState() {
-    return this;
+  public IssuesState getState() {
+    flush();
+    return state;
   }
 
   @Override
-  public void loadState(@NotNull IssuesByFileIndexProjectService state) {
-    XmlSerializerUtil.copyBean(state, this);
+  public void loadState(@NotNull IssuesState state) {
+    this.state = state;
   }
 
+  @Override
+  public void dispose() {
+    flush();
+  }
+
+  /**
+   * stores the files marked unsynced before the issues, so that a file whose downloaded issues were removed is never
+   * stored as synced, and files marked synced since are stored as such only once their issues are
+   */
+  private void flush() {
+    final ChangeTrackingIndex loadedIndex = index;
+    if (loadedIndex == null) {
+      return;
+    }
+    final Set<String> syncedPaths;
+    final Set<String> pathsToStore;
+    synchronized (this) {
+      syncedPaths = new HashSet<>(syncedPathsToStore);
+      pathsToStore = unsyncedPathsChanged ? new HashSet<>(unsyncedPaths) : null;
+      unsyncedPathsChanged = false;
+    }
+    if (pathsToStore != null) {
+      pathsToStore.addAll(syncedPaths);
+      if (!storage.writeUnsyncedPaths(pathsToStore)) {
+        // stored by the next save instead, the issues with them
+        synchronized (this) {
+          unsyncedPathsChanged = true;
+        }
+        return;
+      }
+    }
+    final Collection<String> changedPaths = loadedIndex.takeChangedPaths();
+    if (!changedPaths.isEmpty() && !storage.write(loadedIndex, changedPaths)) {
+      // stored by the next save instead
+      loadedIndex.markChanged(changedPaths);
+      return;
+    }
+    if (!syncedPaths.isEmpty()) {
+      synchronized (this) {
+        syncedPathsToStore.removeAll(syncedPaths);
+        unsyncedPathsChanged = true;
+      }
+    }
+  }
+
+  /**
+   * @return the index as map over its latest version. Every change through the map publishes a new version, so changes
+   * of several files at once are better made by {@link #update(Consumer)}.
+   */
   public Map<String, Set<SonarIssue>> getIndex() {
-    return index;
+    return getLoadedIndex();
+  }
+
+  /**
+   * @return the latest version of the index, which does not change while it is read
+   */
+  public IssuesIndexSnapshot getSnapshot() {
+    return getLoadedIndex().getSnapshot();
+  }
+
+  /**
+   * applies the changes to the next version of the index and publishes them all at once
+   */
+  public void update(Consumer<Map<String, Set<SonarIssue>>> changes) {
+    getLoadedIndex().update(changes);
+  }
+
+  /**
+   * @return the files having issues with the keys in the latest version of the index
+   */
+  public Set<String> getPathsOfIssues(Collection<String> issueKeys) {
+    return getLoadedIndex().getPathsOfIssues(issueKeys);
+  }
+
+  private ChangeTrackingIndex getLoadedIndex() {
+    ChangeTrackingIndex loadedIndex = index;
+    if (loadedIndex == null) {
+      synchronized (this) {
+        loadedIndex = index;
+        if (loadedIndex == null) {
+          loadedIndex = loadIndex();
+          index = loadedIndex;
+        }
+      }
+    }
+    return loadedIndex;
+  }
+
+  private ChangeTrackingIndex loadIndex() {
+    final Optional<ChangeTrackingIndex> storedIndex = storage.load();
+    final Map<String, Set<SonarIssueBean>> legacyIndex = state.getIndex();
+    state.setIndex(null);
+    unsyncedPaths = new HashSet<>();
+    if (storedIndex.isPresent()) {
+      final Optional<Set<String>> storedUnsyncedPaths = storage.loadUnsyncedPaths();
+      if (storedUnsyncedPaths.isPresent()) {
+        unsyncedPaths = storedUnsyncedPaths.get();
+      } else {
+        // without knowing which files miss their downloaded issues, the next download has to be a full one
+        getSyncMarks().clear();
+        unsyncedPathsChanged = true;
+      }
+      return storedIndex.get();
+    }
+    unsyncedPathsChanged = true;
+    if (legacyIndex == null) {
+      // without the issues downloaded up to the sync marks, the next download has to be a full one
+      getSyncMarks().clear();
+      return new ChangeTrackingIndex(new HashMap<>());
+    }
+    final ChangeTrackingIndex migratedIndex = new ChangeTrackingIndex(toIndex(legacyIndex));
+    migratedIndex.markAllChanged();
+    return migratedIndex;
+  }
+
+  private static Map<String, Set<SonarIssue>> toIndex(Map<String, Set<SonarIssueBean>> persistedIndex) {
+    final Map<String, Set<SonarIssue>> loadedIndex = new HashMap<>(persistedIndex.size());
+    persistedIndex.forEach((path, beans) -> loadedIndex.put(
+        path,
+        FileIssues.of(
+            beans.stream().map(SonarIssueBean::toSonarIssue).collect(Collectors.toCollection(LinkedHashSet::new))
+        )
+    ));
+    return loadedIndex;
   }
 
-  public void setIndex(Map<String, Set<SonarIssue>> index) {
-    this.index = index;
+  /**
+   * @return the high-water marks of the issues in the index by SonarQube resource key
+   */
+  public Map<String, IssuesSyncMark> getSyncMarks() {
+    return state.getSyncMarks();
   }
 
+  /**
+   * @return the files whose downloaded issues were removed or replaced since, which the index holds the issues up to
+   * the sync marks for only once they were downloaded again
+   */
+  public synchronized Set<String> getUnsyncedPaths() {
+    getLoadedIndex();
+    return new HashSet<>(unsyncedPaths);
+  }
+
+  /**
+   * only kept while there are sync marks, as without them the next download is a full one anyway
+   */
+  public synchronized void markUnsynced(Collection<String> paths) {
+    if (getSyncMarks().isEmpty() || paths.isEmpty()) {
+      return;
+    }
+    getLoadedIndex();
+    for (String path : paths) {
+      unsyncedPaths.add(path);
+      syncedPathsToStore.remove(path);
+    }
+    unsyncedPathsChanged = true;
+  }
+
+  public synchronized void markSynced(Collection<String> paths) {
+    getLoadedIndex();
+    for (String path : paths) {
+      if (unsyncedPaths.remove(path)) {
+        syncedPathsToStore.add(path);
+        unsyncedPathsChanged = true;
+      }
+    }
+  }
+
+  /**
+   * marks all files synced, once the issues of all files of the project were downloaded or the sync marks were removed
+   */
+  public synchronized void markAllSynced() {
+    getLoadedIndex();
+    if (!unsyncedPaths.isEmpty()) {
+      syncedPathsToStore.addAll(unsyncedPaths);
+      unsyncedPaths.clear();
+      unsyncedPathsChanged = true;
+    }
+  }
+
+  /**
+   * drops the sync marks, so that the next download is a full one, and with them the files marked unsynced
+   */
+  public synchronized void dropSyncMarks() {
+    getSyncMarks().clear();
+    markAllSynced();
+  }
+
+  public static class IssuesState {
+
+    private Map<String, Set<SonarIssueBean>> index;
+    private Map<String, IssuesSyncMark> syncMarks = new HashMap<>();
+
+    /**
+     * @return the index as stored by former versions, only read to take it over into the binary storage
+     */
+    public Map<String, Set<SonarIssueBean>> getIndex() {
+      return index;
+    }
+
+    public void setIndex(Map<String, Set<SonarIssueBean>> index) {
+      this.index = index;
+    }
+
+    public Map<String, IssuesSyncMark> getSyncMarks() {
+      return syncMarks;
+    }
+
+    public void setSyncMarks(Map<String, IssuesSyncMark> syncMarks) {
+      this.syncMarks = syncMarks;
+    }
+  }
 }
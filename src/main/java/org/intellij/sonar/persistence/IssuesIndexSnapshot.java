@@ -0,0 +1,345 @@
+package org.intellij.sonar.persistence;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import org.intellij.sonar.index.IssuesStatistics;
+import org.intellij.sonar.index.SonarIssue;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * an immutable version of the issues index: the stored snapshot, read from the mapped file as files are asked for,
+ * overlaid by the files changed since. Every change of the index publishes a new version, so readers see a consistent
+ * index without locking and can tell by the version which index they read.
+ */
+public final class IssuesIndexSnapshot {
+
+  /**
+   * marks files of the stored snapshot removed since
+   */
+  static final Set<SonarIssue> REMOVED = Collections.unmodifiableSet(new HashSet<>());
+
+  private final long version;
+  private final MappedIssuesSnapshot storedSnapshot;
+  private final LayeredChanges changes;
+  // the version the index was cleared at last, as the changes of versions since start over
+  private final long clearedAtVersion;
+  // counted on first use, then carried over from version to version
+  private volatile IssuesStatistics statistics;
+
+  IssuesIndexSnapshot(
+      long version,
+      @Nullable MappedIssuesSnapshot storedSnapshot,
+      LayeredChanges changes
+  ) {
+    this(version, storedSnapshot, changes, 0, null);
+  }
+
+  private IssuesIndexSnapshot(
+      long version,
+      @Nullable MappedIssuesSnapshot storedSnapshot,
+      LayeredChanges changes,
+      long clearedAtVersion,
+      @Nullable IssuesStatistics statistics
+  ) {
+    this.version = version;
+    this.storedSnapshot = storedSnapshot;
+    this.changes = changes;
+    this.clearedAtVersion = clearedAtVersion;
+    this.statistics = statistics;
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * @return the issues of the file, null if the index has no issues for it
+   */
+  @Nullable
+  public Set<SonarIssue> getIssues(@NotNull String path) {
+    final Set<SonarIssue> changedIssues = changes.get(path);
+    if (changedIssues != null) {
+      return changedIssues == REMOVED ? null : changedIssues;
+    }
+    return storedSnapshot == null ? null : storedSnapshot.get(path);
+  }
+
+  /**
+   * @return whether the index has issues for the file, answered from the changed files and the directory of the stored
+   * snapshot without decoding any issues
+   */
+  public boolean hasIssues(@NotNull String path) {
+    final Set<SonarIssue> changedIssues = changes.get(path);
+    if (changedIssues != null) {
+      return changedIssues != REMOVED && !changedIssues.isEmpty();
+    }
+    return storedSnapshot != null && storedSnapshot.contains(path);
+  }
+
+  /**
+   * @return the counters of the issues of this version, counted once for the first version asked for them and updated
+   * by the changed files for each version after
+   */
+  public IssuesStatistics getStatistics() {
+    IssuesStatistics counted = statistics;
+    if (counted == null) {
+      synchronized (this) {
+        counted = statistics;
+        if (counted == null) {
+          counted = IssuesStatistics.of(entries());
+          statistics = counted;
+        }
+      }
+    }
+    return counted;
+  }
+
+  Iterator<Map.Entry<String, Set<SonarIssue>>> entries() {
+    final Iterator<Map.Entry<String, Set<SonarIssue>>> unchangedEntries = Iterators.filter(
+        Iterators.transform(unchangedPaths(), path -> Maps.immutableEntry(path, storedSnapshot.get(path))),
+        entry -> entry.getValue() != null
+    );
+    return Iterators.concat(unchangedEntries, changedEntries());
+  }
+
+  /**
+   * @return the files of this version, read from the directory of the stored snapshot without decoding any issues
+   */
+  Iterator<String> paths() {
+    return Iterators.concat(unchangedPaths(), Iterators.transform(changedEntries(), Map.Entry::getKey));
+  }
+
+  /**
+   * @return the number of files of this version, counted from the directory of the stored snapshot and the changed
+   * files without decoding any issues
+   */
+  int size() {
+    int size = storedSnapshot == null ? 0 : storedSnapshot.size();
+    for (Iterator<Map.Entry<String, Set<SonarIssue>>> it = changes.entries(); it.hasNext(); ) {
+      final Map.Entry<String, Set<SonarIssue>> change = it.next();
+      final boolean stored = storedSnapshot != null && storedSnapshot.contains(change.getKey());
+      if (change.getValue() == REMOVED && stored) {
+        size--;
+      } else if (change.getValue() != REMOVED && !stored) {
+        size++;
+      }
+    }
+    return size;
+  }
+
+  private Iterator<String> unchangedPaths() {
+    return storedSnapshot == null
+        ? Collections.emptyIterator()
+        : Iterators.filter(storedSnapshot.paths(), path -> !changes.containsKey(path));
+  }
+
+  private Iterator<Map.Entry<String, Set<SonarIssue>>> changedEntries() {
+    return Iterators.filter(changes.entries(), entry -> entry.getValue() != REMOVED);
+  }
+
+  /**
+   * @return this version on top of a stored snapshot of the given version, with only the files changed since as
+   * changes, or null if the given version is not an earlier version on top of the same stored snapshot as this one
+   */
+  @Nullable
+  IssuesIndexSnapshot rebase(IssuesIndexSnapshot storedVersion, MappedIssuesSnapshot newStoredSnapshot) {
+    if (storedVersion.storedSnapshot != storedSnapshot
+        || storedVersion.clearedAtVersion != clearedAtVersion
+        || storedVersion.version > version) {
+      return null;
+    }
+    // every change puts new issues, so the files changed since the stored version are those with other issues now
+    final Map<String, Set<SonarIssue>> changedSince = new HashMap<>();
+    changes.entries().forEachRemaining(change -> {
+      if (storedVersion.changes.get(change.getKey()) != change.getValue()) {
+        changedSince.put(change.getKey(), change.getValue());
+      }
+    });
+    return new IssuesIndexSnapshot(
+        version, newStoredSnapshot, LayeredChanges.of(changedSince), clearedAtVersion, statistics
+    );
+  }
+
+  static void putPathsByIssueKey(Map<String, String> pathsByIssueKey, String path, @Nullable Set<SonarIssue> issues) {
+    if (issues != null && issues != REMOVED) {
+      issues.stream()
+          .map(SonarIssue::getKey)
+          .filter(Objects::nonNull)
+          .forEach(issueKey -> pathsByIssueKey.put(issueKey, path));
+    }
+  }
+
+  /**
+   * @param changedPaths collects the files put or removed through the builder
+   */
+  Builder toBuilder(Set<String> changedPaths) {
+    return new Builder(changedPaths);
+  }
+
+  /**
+   * the next version of the index, built off to the side of the published versions
+   */
+  class Builder extends AbstractMap<String, Set<SonarIssue>> {
+
+    private final Set<String> changedPaths;
+    private MappedIssuesSnapshot nextStoredSnapshot = storedSnapshot;
+    private LayeredChanges previousChanges = changes;
+    // the changes of the next version only, put on top of the changes of this version when it is built
+    private final Map<String, Set<SonarIssue>> nextChanges = new HashMap<>();
+    // the issues the changed files had before the first change, or since the index was cleared
+    private final Map<String, Set<SonarIssue>> previousIssues = new HashMap<>();
+    private boolean cleared;
+
+    private Builder(Set<String> changedPaths) {
+      this.changedPaths = changedPaths;
+    }
+
+    IssuesIndexSnapshot build() {
+      final IssuesStatistics previousStatistics = cleared ? IssuesStatistics.EMPTY : statistics;
+      return new IssuesIndexSnapshot(
+          version + 1,
+          nextStoredSnapshot,
+          previousChanges.with(nextChanges),
+          cleared ? version + 1 : clearedAtVersion,
+          previousStatistics == null ? null : previousStatistics.update(previousIssues, this::get)
+      );
+    }
+
+    /**
+     * moves the keys of the issues of the changed files from the files they were at before to the files they are at now
+     */
+    void updatePathsByIssueKey(Map<String, String> pathsByIssueKey) {
+      if (cleared) {
+        pathsByIssueKey.clear();
+        nextChanges.forEach((path, issues) -> putPathsByIssueKey(pathsByIssueKey, path, issues));
+        return;
+      }
+      previousIssues.forEach((path, issuesBefore) -> {
+        if (issuesBefore != null) {
+          issuesBefore.stream()
+              .map(SonarIssue::getKey)
+              .filter(Objects::nonNull)
+              .forEach(issueKey -> pathsByIssueKey.remove(issueKey, path));
+        }
+      });
+      previousIssues.keySet().forEach(path -> putPathsByIssueKey(pathsByIssueKey, path, get(path)));
+    }
+
+    private Set<SonarIssue> rememberPreviousIssues(String path) {
+      final Set<SonarIssue> issues = get(path);
+      if (!previousIssues.containsKey(path)) {
+        previousIssues.put(path, issues);
+      }
+      return issues;
+    }
+
+    @Override
+    public Set<SonarIssue> get(Object path) {
+      if (!(path instanceof String)) {
+        return null;
+      }
+      Set<SonarIssue> changedIssues = nextChanges.get(path);
+      if (changedIssues == null) {
+        changedIssues = previousChanges.get((String) path);
+      }
+      if (changedIssues != null) {
+        return changedIssues == REMOVED ? null : changedIssues;
+      }
+      return nextStoredSnapshot == null ? null : nextStoredSnapshot.get((String) path);
+    }
+
+    @Override
+    public boolean containsKey(Object path) {
+      return get(path) != null;
+    }
+
+    @Override
+    public Set<SonarIssue> put(String path, Set<SonarIssue> issues) {
+      final Set<SonarIssue> issuesBefore = rememberPreviousIssues(path);
+      changedPaths.add(path);
+      nextChanges.put(path, issues);
+      return issuesBefore;
+    }
+
+    @Override
+    public Set<SonarIssue> remove(Object path) {
+      if (get(path) == null) {
+        return null;
+      }
+      final Set<SonarIssue> issuesBefore = rememberPreviousIssues((String) path);
+      changedPaths.add((String) path);
+      nextChanges.put((String) path, REMOVED);
+      return issuesBefore;
+    }
+
+    @Override
+    public void clear() {
+      toSnapshot().paths().forEachRemaining(changedPaths::add);
+      nextStoredSnapshot = null;
+      previousChanges = LayeredChanges.EMPTY;
+      nextChanges.clear();
+      previousIssues.clear();
+      cleared = true;
+    }
+
+    @Override
+    public int size() {
+      return toSnapshot().size();
+    }
+
+    @NotNull
+    @Override
+    public Set<String> keySet() {
+      final IssuesIndexSnapshot snapshot = toSnapshot();
+      return new AbstractSet<>() {
+
+        @Override
+        public Iterator<String> iterator() {
+          return Iterators.unmodifiableIterator(snapshot.paths());
+        }
+
+        @Override
+        public boolean contains(Object path) {
+          return path instanceof String && snapshot.getIssues((String) path) != null;
+        }
+
+        @Override
+        public int size() {
+          return snapshot.size();
+        }
+      };
+    }
+
+    @NotNull
+    @Override
+    public Set<Entry<String, Set<SonarIssue>>> entrySet() {
+      final IssuesIndexSnapshot snapshot = toSnapshot();
+      return new AbstractSet<>() {
+
+        @Override
+        public Iterator<Entry<String, Set<SonarIssue>>> iterator() {
+          return Iterators.unmodifiableIterator(snapshot.entries());
+        }
+
+        @Override
+        public int size() {
+          return snapshot.size();
+        }
+      };
+    }
+
+    private IssuesIndexSnapshot toSnapshot() {
+      return new IssuesIndexSnapshot(version, nextStoredSnapshot, previousChanges.with(nextChanges), 0, null);
+    }
+  }
+}
@@ -0,0 +1,548 @@
+package org.intellij.sonar.persistence;
+
+import com.google.common.collect.Maps;
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import org.intellij.sonar.index.FileIssues;
+import org.intellij.sonar.index.IssueTextRange;
+import org.intellij.sonar.index.SonarIssue;
+
+/**
+ * stores the issues index in a binary snapshot of all files and a journal of the files changed since the snapshot. Both
+ * start with a format version, every file entry is followed by its checksum. The snapshot is mapped into memory and
+ * decoded file by file, see {@link MappedIssuesSnapshot}. Changes are appended to the journal, the journal is folded
+ * into a new snapshot once it outgrows the snapshot.
+ * <p>
+ * A mapped file cannot be replaced or deleted on every platform, so each new snapshot is written as the next generation
+ * under a new name, with a journal of its own. The latest generation is the stored index, the files of older
+ * generations are deleted as soon as they are no longer mapped.
+ */
+class IssuesIndexStorage {
+
+  static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+  private static final Logger LOG = Logger.getInstance(IssuesIndexStorage.class);
+  private static final int MAGIC = 0x534f4e49;
+  private static final int FORMAT_VERSION = 4;
+  private static final long MIN_JOURNAL_SIZE_TO_COMPACT = 1024 * 1024;
+  private static final int REMOVED = -1;
+
+  private static final Pattern GENERATION_FILE_NAME = Pattern.compile("issues\\.(\\d+)\\.(snapshot|journal)(\\.tmp)?");
+
+  private final Path directory;
+  private final Path unsyncedPaths;
+  private long generation;
+  private Path snapshot;
+  private Path journal;
+
+  IssuesIndexStorage(Path directory) {
+    this.directory = directory;
+    this.unsyncedPaths = directory.resolve("unsynced.paths");
+    setGeneration(0);
+  }
+
+  private void setGeneration(long generation) {
+    this.generation = generation;
+    this.snapshot = directory.resolve("issues." + generation + ".snapshot");
+    this.journal = directory.resolve("issues." + generation + ".journal");
+  }
+
+  /**
+   * @return the stored index, empty if it is missing or unreadable, in which case the stored files are dropped
+   */
+  synchronized Optional<ChangeTrackingIndex> load() {
+    setGeneration(findLatestGeneration());
+    deleteOlderGenerations();
+    if (!Files.exists(snapshot) && !Files.exists(journal)) {
+      return Optional.empty();
+    }
+    try {
+      MappedIssuesSnapshot mappedSnapshot = null;
+      if (Files.exists(snapshot)) {
+        mappedSnapshot = MappedIssuesSnapshot.map(snapshot).orElse(null);
+        if (mappedSnapshot == null) {
+          LOG.warn("Dropping the unreadable SonarQube issues index " + snapshot);
+          delete();
+          return Optional.empty();
+        }
+      }
+      final Map<String, Set<SonarIssue>> storedChanges = new LinkedHashMap<>();
+      if (Files.exists(journal) && !readJournal(journal, storedChanges)) {
+        // the changes of an interrupted write are lost, the entries before them are kept
+        rewriteJournal(storedChanges);
+      }
+      return Optional.of(new ChangeTrackingIndex(mappedSnapshot, storedChanges));
+    } catch (IOException e) {
+      LOG.warn("Could not load the SonarQube issues index", e);
+      delete();
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * appends the current issues of the changed files to the journal, files missing in the index are stored as removed.
+   * Once the journal is folded into a new snapshot, the index is put on top of it.
+   *
+   * @return false if the changes could not be stored, in which case the stored index is left as it was
+   */
+  synchronized boolean write(ChangeTrackingIndex changeTrackingIndex, Collection<String> changedPaths) {
+    // the issues are written as of one version, even if the index changes meanwhile
+    final IssuesIndexSnapshot index = changeTrackingIndex.getSnapshot();
+    try {
+      if (!Files.exists(snapshot)) {
+        compact(changeTrackingIndex, index);
+        return true;
+      }
+      appendToJournal(index, changedPaths);
+    } catch (IOException e) {
+      LOG.warn("Could not store the SonarQube issues index", e);
+      return false;
+    }
+    try {
+      if (Files.size(journal) > Math.max(MIN_JOURNAL_SIZE_TO_COMPACT, Files.size(snapshot))) {
+        compact(changeTrackingIndex, index);
+      } else {
+        // older generations still mapped at the last compaction may be unmapped by now
+        deleteOlderGenerations();
+      }
+    } catch (IOException e) {
+      // the changes are in the journal, compacting is tried again by the next write
+      LOG.warn("Could not compact the SonarQube issues index", e);
+    }
+    return true;
+  }
+
+  /**
+   * @return the stored paths of the files marked unsynced, none if they were never stored, empty if they are unreadable
+   */
+  synchronized Optional<Set<String>> loadUnsyncedPaths() {
+    if (!Files.exists(unsyncedPaths)) {
+      return Optional.of(new HashSet<>());
+    }
+    try {
+      final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(unsyncedPaths));
+      if (buffer.remaining() < HEADER_SIZE + Integer.BYTES || !hasHeader(buffer)) {
+        return Optional.empty();
+      }
+      buffer.position(HEADER_SIZE);
+      final int length = buffer.getInt();
+      if (length < 0 || length > buffer.remaining() - Long.BYTES) {
+        return Optional.empty();
+      }
+      final byte[] bytes = new byte[length];
+      buffer.get(bytes);
+      final CRC32 checksum = new CRC32();
+      checksum.update(bytes);
+      if (checksum.getValue() != buffer.getLong()) {
+        return Optional.empty();
+      }
+      final ByteBuffer entry = ByteBuffer.wrap(bytes);
+      final int count = readInt(entry);
+      if (count < 0 || count > entry.remaining()) {
+        return Optional.empty();
+      }
+      final Set<String> paths = new HashSet<>(count);
+      for (int i = 0; i < count; i++) {
+        final String path = readString(entry);
+        if (path == null) {
+          return Optional.empty();
+        }
+        paths.add(path);
+      }
+      return Optional.of(paths);
+    } catch (IOException | CorruptEntryException e) {
+      LOG.warn("Could not load the unsynced files of the SonarQube issues index", e);
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * replaces the stored paths of the files marked unsynced at once
+   *
+   * @return false if the paths could not be stored, in which case the stored paths are left as they were
+   */
+  synchronized boolean writeUnsyncedPaths(Collection<String> paths) {
+    final Path newUnsyncedPaths = unsyncedPaths.resolveSibling(unsyncedPaths.getFileName() + ".tmp");
+    try {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      final DataOutputStream entry = new DataOutputStream(bytes);
+      entry.writeInt(paths.size());
+      for (String path : paths) {
+        writeString(entry, path);
+      }
+      entry.flush();
+      final CRC32 checksum = new CRC32();
+      checksum.update(bytes.toByteArray());
+      try (DataOutputStream out = new DataOutputStream(newOutputStream(newUnsyncedPaths))) {
+        writeHeader(out);
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+        out.writeLong(checksum.getValue());
+      }
+      // the file is never mapped, so it can be replaced on all platforms
+      Files.move(newUnsyncedPaths, unsyncedPaths, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      return true;
+    } catch (IOException e) {
+      LOG.warn("Could not store the unsynced files of the SonarQube issues index", e);
+      try {
+        Files.deleteIfExists(newUnsyncedPaths);
+      } catch (IOException deleteException) {
+        LOG.debug("Could not delete " + newUnsyncedPaths, deleteException);
+      }
+      return false;
+    }
+  }
+
+  private void appendToJournal(IssuesIndexSnapshot index, Collection<String> changedPaths) throws IOException {
+    if (!Files.exists(journal)) {
+      try (DataOutputStream out = new DataOutputStream(newOutputStream(journal))) {
+        writeHeader(out);
+      }
+    }
+    final long journalSize = Files.size(journal);
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(journal, StandardOpenOption.APPEND))
+    )) {
+      for (String path : changedPaths) {
+        writeEntry(out, path, index.getIssues(path));
+      }
+    } catch (IOException e) {
+      // entries appended after an incomplete one would be lost when the journal is read
+      try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE)) {
+        channel.truncate(journalSize);
+      } catch (IOException truncateException) {
+        e.addSuppressed(truncateException);
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * writes a snapshot of the version of the index as the next generation, which starts without journal, and puts the
+   * index on top of it. Versions read before may still read the snapshot of the former generation, which stays mapped
+   * until it is no longer referenced.
+   */
+  private void compact(ChangeTrackingIndex changeTrackingIndex, IssuesIndexSnapshot index) throws IOException {
+    final List<Map.Entry<byte[], Set<SonarIssue>>> entries = new ArrayList<>();
+    index.entries().forEachRemaining(
+        entry -> entries.add(Maps.immutableEntry(entry.getKey().getBytes(StandardCharsets.UTF_8), entry.getValue()))
+    );
+    entries.sort((entry, otherEntry) -> Arrays.compareUnsigned(entry.getKey(), otherEntry.getKey()));
+    final Path nextSnapshot = directory.resolve("issues." + (generation + 1) + ".snapshot");
+    final Path newSnapshot = nextSnapshot.resolveSibling(nextSnapshot.getFileName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(newOutputStream(newSnapshot))) {
+      writeHeader(out);
+      final int[] offsets = new int[entries.size()];
+      for (int i = 0; i < offsets.length; i++) {
+        offsets[i] = out.size();
+        writeEntry(out, new String(entries.get(i).getKey(), StandardCharsets.UTF_8), entries.get(i).getValue());
+      }
+      final int directoryOffset = out.size();
+      for (int offset : offsets) {
+        out.writeInt(offset);
+      }
+      out.writeInt(offsets.length);
+      out.writeLong(directoryOffset);
+      if (out.size() == Integer.MAX_VALUE) {
+        throw new IOException("The SonarQube issues index exceeds 2 GB");
+      }
+    } catch (IOException e) {
+      Files.deleteIfExists(newSnapshot);
+      throw e;
+    }
+    // nothing maps the new name yet, so the complete snapshot appears at once on all platforms
+    Files.move(newSnapshot, nextSnapshot, StandardCopyOption.ATOMIC_MOVE);
+    setGeneration(generation + 1);
+    // the changes folded into the new snapshot need not be kept on the heap anymore
+    MappedIssuesSnapshot.map(snapshot).ifPresent(mappedSnapshot -> changeTrackingIndex.rebase(index, mappedSnapshot));
+    deleteOlderGenerations();
+  }
+
+  /**
+   * @return the generation of the latest snapshot or journal in the directory, 0 if there is none
+   */
+  private long findLatestGeneration() {
+    long latestGeneration = 0;
+    for (Path file : listGenerationFiles()) {
+      final Matcher matcher = GENERATION_FILE_NAME.matcher(file.getFileName().toString());
+      if (matcher.matches() && matcher.group(3) == null) {
+        latestGeneration = Math.max(latestGeneration, Long.parseLong(matcher.group(1)));
+      }
+    }
+    return latestGeneration;
+  }
+
+  /**
+   * deletes the files of the generations before the current one, keeping those which are still mapped and cannot be
+   * deleted yet
+   */
+  private void deleteOlderGenerations() {
+    for (Path file : listGenerationFiles()) {
+      final Matcher matcher = GENERATION_FILE_NAME.matcher(file.getFileName().toString());
+      if (matcher.matches() && Long.parseLong(matcher.group(1)) < generation) {
+        try {
+          Files.deleteIfExists(file);
+        } catch (IOException e) {
+          LOG.debug("Could not delete the former SonarQube issues index " + file, e);
+        }
+      }
+    }
+  }
+
+  private List<Path> listGenerationFiles() {
+    if (!Files.isDirectory(directory)) {
+      return Collections.emptyList();
+    }
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.filter(file -> GENERATION_FILE_NAME.matcher(file.getFileName().toString()).matches())
+          .collect(Collectors.toList());
+    } catch (IOException e) {
+      LOG.warn("Could not list the SonarQube issues index files in " + directory, e);
+      return Collections.emptyList();
+    }
+  }
+
+  private void rewriteJournal(Map<String, Set<SonarIssue>> storedChanges) throws IOException {
+    final Path newJournal = journal.resolveSibling(journal.getFileName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(newOutputStream(newJournal))) {
+      writeHeader(out);
+      for (Map.Entry<String, Set<SonarIssue>> entry : storedChanges.entrySet()) {
+        writeEntry(out, entry.getKey(), entry.getValue() == IssuesIndexSnapshot.REMOVED ? null : entry.getValue());
+      }
+    }
+    Files.move(newJournal, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private void delete() {
+    try {
+      Files.deleteIfExists(snapshot);
+      Files.deleteIfExists(journal);
+    } catch (IOException e) {
+      LOG.warn("Could not delete the SonarQube issues index", e);
+    }
+  }
+
+  private static OutputStream newOutputStream(Path file) throws IOException {
+    Files.createDirectories(file.getParent());
+    return new BufferedOutputStream(Files.newOutputStream(file));
+  }
+
+  private static void writeHeader(DataOutputStream out) throws IOException {
+    out.writeInt(MAGIC);
+    out.writeInt(FORMAT_VERSION);
+  }
+
+  private static void writeEntry(DataOutputStream out, String path, Set<SonarIssue> issues) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream entry = new DataOutputStream(bytes);
+    writeString(entry, path);
+    if (issues == null) {
+      entry.writeInt(REMOVED);
+    } else {
+      entry.writeInt(issues.size());
+      for (SonarIssue issue : issues) {
+        writeIssue(entry, issue);
+      }
+    }
+    entry.flush();
+    final CRC32 checksum = new CRC32();
+    checksum.update(bytes.toByteArray());
+    out.writeInt(bytes.size());
+    bytes.writeTo(out);
+    out.writeLong(checksum.getValue());
+  }
+
+  private static void writeIssue(DataOutputStream out, SonarIssue issue) throws IOException {
+    writeString(out, issue.getKey());
+    writeString(out, issue.getRuleKey());
+    writeString(out, issue.getMessage());
+    writeString(out, issue.getSeverity());
+    out.writeBoolean(issue.getLine() != null);
+    out.writeInt(issue.getLine() == null ? 0 : issue.getLine());
+    out.writeByte(issue.getIsNew() == null ? 0 : issue.getIsNew() ? 2 : 1);
+    final IssueTextRange textRange = issue.getTextRange();
+    out.writeBoolean(textRange != null);
+    if (textRange != null) {
+      out.writeInt(textRange.getStartLine());
+      out.writeInt(textRange.getStartLineOffset());
+      out.writeInt(textRange.getEndLine());
+      out.writeInt(textRange.getEndLineOffset());
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    if (s == null) {
+      out.writeInt(-1);
+    } else {
+      final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  /**
+   * reads the entries of the journal, later entries of a file replacing the earlier ones
+   *
+   * @return false if the journal has another format or ends with an incomplete or corrupt entry
+   */
+  private static boolean readJournal(Path file, Map<String, Set<SonarIssue>> storedChanges) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+        return false;
+      }
+      while (true) {
+        final int firstByte = in.read();
+        if (firstByte < 0) {
+          return true;
+        }
+        final int length = firstByte << 24 | in.readUnsignedByte() << 16 | in.readUnsignedByte() << 8
+            | in.readUnsignedByte();
+        if (length < 0) {
+          return false;
+        }
+        final byte[] bytes = readFully(in, length);
+        final CRC32 checksum = new CRC32();
+        checksum.update(bytes);
+        if (checksum.getValue() != in.readLong()) {
+          return false;
+        }
+        final ByteBuffer entry = ByteBuffer.wrap(bytes);
+        final String path;
+        final Set<SonarIssue> issues;
+        try {
+          path = readString(entry);
+          issues = readIssues(entry);
+        } catch (CorruptEntryException e) {
+          return false;
+        }
+        if (path == null) {
+          return false;
+        }
+        storedChanges.put(path, issues == null ? IssuesIndexSnapshot.REMOVED : issues);
+      }
+    } catch (EOFException e) {
+      return false;
+    }
+  }
+
+  private static byte[] readFully(InputStream in, int length) throws IOException {
+    final byte[] bytes = in.readNBytes(length);
+    if (bytes.length != length) {
+      throw new EOFException();
+    }
+    return bytes;
+  }
+
+  static boolean hasHeader(ByteBuffer buffer) {
+    return buffer.getInt(0) == MAGIC && buffer.getInt(Integer.BYTES) == FORMAT_VERSION;
+  }
+
+  /**
+   * @return the issues of the entry, null if the entry stores the file as removed
+   * @throws CorruptEntryException if the entry does not hold what its counts and lengths tell
+   */
+  static Set<SonarIssue> readIssues(ByteBuffer entry) {
+    final int count = readInt(entry);
+    if (count == REMOVED) {
+      return null;
+    }
+    if (count < 0 || count > entry.remaining()) {
+      throw new CorruptEntryException("Invalid number of issues " + count);
+    }
+    final Set<SonarIssue> issues = new LinkedHashSet<>(count);
+    for (int i = 0; i < count; i++) {
+      issues.add(readIssue(entry));
+    }
+    return FileIssues.of(issues);
+  }
+
+  private static SonarIssue readIssue(ByteBuffer entry) {
+    final String key = readString(entry);
+    final String ruleKey = readString(entry);
+    final String message = readString(entry);
+    final String severity = readString(entry);
+    final boolean hasLine = readByte(entry) != 0;
+    final int line = readInt(entry);
+    final byte isNew = readByte(entry);
+    final IssueTextRange textRange = readByte(entry) == 0
+        ? null
+        : new IssueTextRange(readInt(entry), readInt(entry), readInt(entry), readInt(entry));
+    return new SonarIssue(
+        key,
+        ruleKey,
+        hasLine ? line : null,
+        message,
+        severity,
+        isNew == 0 ? null : isNew == 2,
+        textRange
+    );
+  }
+
+  static String readString(ByteBuffer entry) {
+    final int length = readInt(entry);
+    if (length == -1) {
+      return null;
+    }
+    if (length < 0 || length > entry.remaining()) {
+      throw new CorruptEntryException("Invalid string length " + length);
+    }
+    final byte[] bytes = new byte[length];
+    entry.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static int readInt(ByteBuffer entry) {
+    if (entry.remaining() < Integer.BYTES) {
+      throw new CorruptEntryException("Entry is shorter than its contents");
+    }
+    return entry.getInt();
+  }
+
+  private static byte readByte(ByteBuffer entry) {
+    if (!entry.hasRemaining()) {
+      throw new CorruptEntryException("Entry is shorter than its contents");
+    }
+    return entry.get();
+  }
+
+  /**
+   * thrown when an entry with a valid checksum does not hold what its counts and lengths tell
+   */
+  static class CorruptEntryException extends RuntimeException {
+
+    CorruptEntryException(String message) {
+      super(message);
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package org.intellij.sonar.persistence;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+
+/**
+ * high-water mark of the issues downloaded for a SonarQube resource
+ */
+public class IssuesSyncMark {
+
+  // identifies the query and the project files the issues were indexed for
+  private String fingerprint;
+  // latest update date of the issues of the resource on the server when the download started
+  private String lastUpdateDate;
+
+  public IssuesSyncMark() {
+  }
+
+  public IssuesSyncMark(String fingerprint, String lastUpdateDate) {
+    this.fingerprint = fingerprint;
+    this.lastUpdateDate = lastUpdateDate;
+  }
+
+  public String getFingerprint() {
+    return fingerprint;
+  }
+
+  public void setFingerprint(String fingerprint) {
+    this.fingerprint = fingerprint;
+  }
+
+  public String getLastUpdateDate() {
+    return lastUpdateDate;
+  }
+
+  public void setLastUpdateDate(String lastUpdateDate) {
+    this.lastUpdateDate = lastUpdateDate;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    IssuesSyncMark that = (IssuesSyncMark) o;
+    return Objects.equal(fingerprint, that.fingerprint) &&
+        Objects.equal(lastUpdateDate, that.lastUpdateDate);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(fingerprint, lastUpdateDate);
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(IssuesSyncMark.class.getName())
+        .add("fingerprint", fingerprint)
+        .add("lastUpdateDate", lastUpdateDate)
+        .toString();
+  }
+}
@@ -0,0 +1,91 @@
+package org.intellij.sonar.persistence;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import org.intellij.sonar.index.SonarIssue;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * the files changed since the stored snapshot, as an immutable stack of layers. Every version of the index puts a layer
+ * of its own changes on top, and the top layers are merged as soon as the upper one is as large as the one below. So a
+ * new version copies only a few changes instead of all of them, while a file is looked up in a few layers only.
+ */
+final class LayeredChanges {
+
+  static final LayeredChanges EMPTY = new LayeredChanges(Collections.emptyMap(), null);
+
+  private final Map<String, Set<SonarIssue>> layer;
+  private final LayeredChanges below;
+
+  private LayeredChanges(Map<String, Set<SonarIssue>> layer, @Nullable LayeredChanges below) {
+    this.layer = layer;
+    this.below = below;
+  }
+
+  static LayeredChanges of(Map<String, Set<SonarIssue>> changes) {
+    return EMPTY.with(changes);
+  }
+
+  /**
+   * @return these changes overlaid by the given ones, which are copied
+   */
+  LayeredChanges with(Map<String, Set<SonarIssue>> changes) {
+    if (changes.isEmpty()) {
+      return this;
+    }
+    Map<String, Set<SonarIssue>> top = new HashMap<>(changes);
+    LayeredChanges rest = this;
+    while (rest != EMPTY && top.size() >= rest.layer.size()) {
+      final Map<String, Set<SonarIssue>> merged = new HashMap<>(rest.layer);
+      merged.putAll(top);
+      top = merged;
+      rest = rest.below;
+    }
+    return new LayeredChanges(Collections.unmodifiableMap(top), rest);
+  }
+
+  /**
+   * @return the latest change of the file, {@link IssuesIndexSnapshot#REMOVED} if it was removed, null if it did not
+   * change
+   */
+  @Nullable
+  Set<SonarIssue> get(String path) {
+    for (LayeredChanges changes = this; changes != EMPTY; changes = changes.below) {
+      final Set<SonarIssue> issues = changes.layer.get(path);
+      if (issues != null) {
+        return issues;
+      }
+    }
+    return null;
+  }
+
+  boolean containsKey(String path) {
+    return get(path) != null;
+  }
+
+  boolean isEmpty() {
+    return this == EMPTY;
+  }
+
+  /**
+   * @return the latest change of every changed file
+   */
+  Iterator<Map.Entry<String, Set<SonarIssue>>> entries() {
+    if (this == EMPTY) {
+      return Collections.emptyIterator();
+    }
+    final Iterator<Map.Entry<String, Set<SonarIssue>>> belowEntries = Iterators.filter(
+        below.entries(),
+        entry -> !layer.containsKey(entry.getKey())
+    );
+    return Iterators.concat(
+        Iterators.transform(layer.entrySet().iterator(), entry -> Maps.immutableEntry(entry.getKey(), entry.getValue())),
+        belowEntries
+    );
+  }
+}
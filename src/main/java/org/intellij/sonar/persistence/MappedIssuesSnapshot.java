@@ -0,0 +1,199 @@
+package org.intellij.sonar.persistence;
+
+import com.google.common.collect.AbstractIterator;
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.CRC32;
+import org.intellij.sonar.index.SonarIssue;
+
+/**
+ * a snapshot of the issues index mapped into memory instead of read onto the heap. The file entries are followed by a
+ * directory of their offsets sorted by the UTF-8 bytes of the paths, so the issues of a file are found by binary search
+ * and only decoded when asked for.
+ * <p>
+ * Layout: header, entries as written by {@link IssuesIndexStorage}, one int offset per entry, then the footer with the
+ * number of entries and the offset of the directory.
+ * <p>
+ * The footer, the directory and the lengths of all entries and paths are checked against the size of the file when it
+ * is mapped, and every entry again before it is read, so a corrupt file is never read out of bounds.
+ */
+class MappedIssuesSnapshot {
+
+  private static final Logger LOG = Logger.getInstance(MappedIssuesSnapshot.class);
+  static final int FOOTER_SIZE = Integer.BYTES + Long.BYTES;
+  // the length of an entry, its path and number of issues, and its checksum
+  private static final int MIN_ENTRY_SIZE = 3 * Integer.BYTES + Long.BYTES;
+
+  private final ByteBuffer buffer;
+  private final int entriesCount;
+  private final int directoryOffset;
+
+  private MappedIssuesSnapshot(ByteBuffer buffer, int entriesCount, int directoryOffset) {
+    this.buffer = buffer;
+    this.entriesCount = entriesCount;
+    this.directoryOffset = directoryOffset;
+  }
+
+  /**
+   * @return the mapped snapshot, empty if the file has another format, is not complete or is corrupt
+   */
+  static Optional<MappedIssuesSnapshot> map(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      final long size = channel.size();
+      if (size < IssuesIndexStorage.HEADER_SIZE + FOOTER_SIZE || size > Integer.MAX_VALUE) {
+        return Optional.empty();
+      }
+      final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      if (!IssuesIndexStorage.hasHeader(buffer)) {
+        return Optional.empty();
+      }
+      final int entriesCount = buffer.getInt((int) size - FOOTER_SIZE);
+      final long directoryOffset = buffer.getLong((int) size - Long.BYTES);
+      if (entriesCount < 0
+          || directoryOffset < IssuesIndexStorage.HEADER_SIZE
+          || directoryOffset + (long) entriesCount * Integer.BYTES != size - FOOTER_SIZE) {
+        return Optional.empty();
+      }
+      final MappedIssuesSnapshot snapshot = new MappedIssuesSnapshot(buffer, entriesCount, (int) directoryOffset);
+      for (int index = 0; index < entriesCount; index++) {
+        if (!snapshot.isInBounds(snapshot.entryOffset(index))) {
+          return Optional.empty();
+        }
+      }
+      return Optional.of(snapshot);
+    }
+  }
+
+  /**
+   * @return whether the entry, and the path at its start, end before the directory
+   */
+  private boolean isInBounds(int entryOffset) {
+    if (entryOffset < IssuesIndexStorage.HEADER_SIZE || (long) entryOffset + MIN_ENTRY_SIZE > directoryOffset) {
+      return false;
+    }
+    final int length = buffer.getInt(entryOffset);
+    final int pathLength = buffer.getInt(entryOffset + Integer.BYTES);
+    return length >= 2 * Integer.BYTES
+        && (long) entryOffset + Integer.BYTES + length + Long.BYTES <= directoryOffset
+        && pathLength >= 0
+        && pathLength <= length - 2 * Integer.BYTES;
+  }
+
+  int size() {
+    return entriesCount;
+  }
+
+  /**
+   * @return the issues of the file, null if the snapshot has no entry for it or the entry is corrupt
+   */
+  Set<SonarIssue> get(String path) {
+    final int index = indexOf(path);
+    return index < 0 ? null : decodeEntry(entryOffset(index));
+  }
+
+  /**
+   * @return whether the snapshot has an entry for the file, without decoding the entry
+   */
+  boolean contains(String path) {
+    return indexOf(path) >= 0;
+  }
+
+  private int indexOf(String path) {
+    final byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+    int low = 0;
+    int high = entriesCount - 1;
+    while (low <= high) {
+      final int middle = (low + high) >>> 1;
+      final int entryOffset = entryOffset(middle);
+      if (!isInBounds(entryOffset)) {
+        LOG.warn("Skipping a corrupt entry of the SonarQube issues index");
+        return -1;
+      }
+      final int comparison = comparePathAt(entryOffset, pathBytes);
+      if (comparison < 0) {
+        low = middle + 1;
+      } else if (comparison > 0) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return the paths of the snapshot in the order of their UTF-8 bytes
+   */
+  Iterator<String> paths() {
+    return new AbstractIterator<>() {
+
+      private int index;
+
+      @Override
+      protected String computeNext() {
+        while (index < entriesCount) {
+          final int entryOffset = entryOffset(index++);
+          if (isInBounds(entryOffset)) {
+            final ByteBuffer entry = buffer.duplicate();
+            entry.position(entryOffset + Integer.BYTES);
+            return IssuesIndexStorage.readString(entry);
+          }
+          LOG.warn("Skipping a corrupt entry of the SonarQube issues index");
+        }
+        return endOfData();
+      }
+    };
+  }
+
+  private int entryOffset(int index) {
+    return buffer.getInt(directoryOffset + index * Integer.BYTES);
+  }
+
+  /**
+   * compares the path of the entry with the path bytes like {@link java.util.Arrays#compareUnsigned(byte[], byte[])}
+   */
+  private int comparePathAt(int entryOffset, byte[] pathBytes) {
+    // the path is the first field of the entry, after the length of the entry
+    final int pathLength = buffer.getInt(entryOffset + Integer.BYTES);
+    final int pathStart = entryOffset + 2 * Integer.BYTES;
+    final int length = Math.min(pathLength, pathBytes.length);
+    for (int i = 0; i < length; i++) {
+      final int comparison = Integer.compare(buffer.get(pathStart + i) & 0xff, pathBytes[i] & 0xff);
+      if (comparison != 0) {
+        return comparison;
+      }
+    }
+    return Integer.compare(pathLength, pathBytes.length);
+  }
+
+  private Set<SonarIssue> decodeEntry(int entryOffset) {
+    if (!isInBounds(entryOffset)) {
+      LOG.warn("Skipping a corrupt entry of the SonarQube issues index");
+      return null;
+    }
+    final int length = buffer.getInt(entryOffset);
+    final ByteBuffer entry = buffer.duplicate();
+    entry.position(entryOffset + Integer.BYTES).limit(entryOffset + Integer.BYTES + length);
+    final CRC32 checksum = new CRC32();
+    checksum.update(entry.duplicate());
+    if (checksum.getValue() != buffer.getLong(entryOffset + Integer.BYTES + length)) {
+      LOG.warn("Skipping a corrupt entry of the SonarQube issues index");
+      return null;
+    }
+    try {
+      IssuesIndexStorage.readString(entry);
+      return IssuesIndexStorage.readIssues(entry);
+    } catch (IssuesIndexStorage.CorruptEntryException e) {
+      LOG.warn("Skipping a corrupt entry of the SonarQube issues index", e);
+      return null;
+    }
+  }
+}
@@ -39,6 +39,7 @@ public class ModuleSettings implements PersistentStateComponent<Settings> {
   @Override
   public void loadState(@NotNull Settings settings) {
     this.settings = settings;
+    EffectiveSettingsCache.settingsChanged();
   }
 
 }
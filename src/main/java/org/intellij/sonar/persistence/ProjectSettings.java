@@ -30,6 +30,7 @@ public class ProjectSettings implements PersistentStateComponent<Settings> {
   @Override
   public void loadState(@NotNull Settings settings) {
     this.settings = settings;
+    EffectiveSettingsCache.settingsChanged();
   }
 
 }
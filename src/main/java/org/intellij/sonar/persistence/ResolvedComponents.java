@@ -0,0 +1,60 @@
+package org.intellij.sonar.persistence;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * local files of the SonarQube components of a resource, as resolved against all project files of the resource, and
+ * the component key prefixes learned from them, see {@link org.intellij.sonar.util.SonarComponentKeys}
+ */
+public class ResolvedComponents {
+
+  private Map<String, List<String>> filesByComponent = new ConcurrentHashMap<>();
+  private Map<String, String> keyPrefixByPathPrefix = new ConcurrentHashMap<>();
+
+  public Map<String, List<String>> getFilesByComponent() {
+    return filesByComponent;
+  }
+
+  public void setFilesByComponent(Map<String, List<String>> filesByComponent) {
+    // the resolved components are added while the state may be saved
+    this.filesByComponent = new ConcurrentHashMap<>(filesByComponent);
+  }
+
+  public Map<String, String> getKeyPrefixByPathPrefix() {
+    return keyPrefixByPathPrefix;
+  }
+
+  public void setKeyPrefixByPathPrefix(Map<String, String> keyPrefixByPathPrefix) {
+    this.keyPrefixByPathPrefix = new ConcurrentHashMap<>(keyPrefixByPathPrefix);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    ResolvedComponents that = (ResolvedComponents) o;
+    return Objects.equal(filesByComponent, that.filesByComponent) &&
+        Objects.equal(keyPrefixByPathPrefix, that.keyPrefixByPathPrefix);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(filesByComponent, keyPrefixByPathPrefix);
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(ResolvedComponents.class.getName())
+        .add("components", filesByComponent.size())
+        .add("keyPrefixes", keyPrefixByPathPrefix.size())
+        .toString();
+  }
+}
@@ -0,0 +1,122 @@
+package org.intellij.sonar.persistence;
+
+import com.intellij.openapi.components.PersistentStateComponent;
+import com.intellij.openapi.components.State;
+import com.intellij.openapi.components.Storage;
+import com.intellij.openapi.components.StoragePathMacros;
+import com.intellij.openapi.project.Project;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.intellij.sonar.util.SonarComponentToFileIndex;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * remembers across inspection runs to which local files the SonarQube components resolve, so the components need not
+ * be matched against the project files again. Files added to or removed from the project are queued as they change
+ * and only the components they may belong to are forgotten, once the resolved components are looked up next.
+ */
+@State(
+    name = "sonarResolvedComponents",
+    storages = {
+        @Storage(StoragePathMacros.CACHE_FILE)
+    }
+)
+public class ResolvedComponentsProjectService
+    implements PersistentStateComponent<ResolvedComponentsProjectService> {
+
+  // beyond that many queued paths all resolved components are forgotten, instead of checking them one by one
+  private static final int MAX_CHANGED_PATHS = 10_000;
+
+  private Map<String, ResolvedComponents> resolvedComponentsByResourceKey = new ConcurrentHashMap<>();
+  // changed since the resolved components were last looked up, guarded by this
+  private final Set<String> addedFilePaths = new HashSet<>();
+  private final Set<String> removedPaths = new HashSet<>();
+
+  public static Optional<ResolvedComponentsProjectService> getInstance(@NotNull Project project) {
+    if (project.isDisposed()) {
+      return Optional.empty();
+    }
+    return Optional.ofNullable(project.getService(ResolvedComponentsProjectService.class));
+  }
+
+  /**
+   * @param resourceKey the resource key, or an empty string for files without configured resources
+   * @return the resolved components of the resource, without those which may resolve to files added or removed since
+   */
+  public synchronized ResolvedComponents getResolvedComponents(@NotNull String resourceKey) {
+    forgetComponentsOfChangedFiles();
+    return resolvedComponentsByResourceKey.computeIfAbsent(resourceKey, key -> new ResolvedComponents());
+  }
+
+  /**
+   * queues the files added to the project and the files or directories removed from it, which is cheap enough to be
+   * done for every change of the file system
+   */
+  public synchronized void filesChanged(Collection<String> addedFilePaths, Collection<String> removedPaths) {
+    this.addedFilePaths.addAll(addedFilePaths);
+    this.removedPaths.addAll(removedPaths);
+    if (this.addedFilePaths.size() + this.removedPaths.size() > MAX_CHANGED_PATHS) {
+      clear();
+    }
+  }
+
+  /**
+   * forgets all resolved components, as when a directory with files comes in or the resources of the files change
+   */
+  public synchronized void clear() {
+    resolvedComponentsByResourceKey.clear();
+    addedFilePaths.clear();
+    removedPaths.clear();
+  }
+
+  /**
+   * forgets the components resolving to a removed file and the components an added file may resolve to
+   */
+  private void forgetComponentsOfChangedFiles() {
+    if (addedFilePaths.isEmpty() && removedPaths.isEmpty()) {
+      return;
+    }
+    resolvedComponentsByResourceKey.forEach((resourceKey, resolvedComponents) -> {
+      final SonarComponentToFileIndex addedFiles = new SonarComponentToFileIndex(resourceKey, addedFilePaths);
+      resolvedComponents.getFilesByComponent().entrySet().removeIf(
+          entry -> !removedPaths.isEmpty() && entry.getValue().stream().anyMatch(this::isRemoved)
+              || !addedFilePaths.isEmpty() && !addedFiles.findFiles(entry.getKey()).isEmpty()
+      );
+    });
+    addedFilePaths.clear();
+    removedPaths.clear();
+  }
+
+  private boolean isRemoved(String filePath) {
+    for (String path = filePath; !path.isEmpty(); path = path.substring(0, Math.max(0, path.lastIndexOf('/')))) {
+      if (removedPaths.contains(path)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Nullable
+  @Override
+  public ResolvedComponentsProjectService getState() {
+    return this;
+  }
+
+  @Override
+  public void loadState(@NotNull ResolvedComponentsProjectService state) {
+    resolvedComponentsByResourceKey = new ConcurrentHashMap<>(state.getResolvedComponentsByResourceKey());
+  }
+
+  public Map<String, ResolvedComponents> getResolvedComponentsByResourceKey() {
+    return resolvedComponentsByResourceKey;
+  }
+
+  public void setResolvedComponentsByResourceKey(Map<String, ResolvedComponents> resolvedComponentsByResourceKey) {
+    this.resolvedComponentsByResourceKey = new ConcurrentHashMap<>(resolvedComponentsByResourceKey);
+  }
+}
@@ -2,10 +2,7 @@ package org.intellij.sonar.persistence;
 
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Objects;
-import com.intellij.openapi.module.Module;
-import com.intellij.openapi.module.ModuleUtil;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -74,22 +71,12 @@ public class Settings {
     );
   }
 
+  /**
+   * @return the settings of the module of the file enriched with the project settings, shared between all files of the
+   * module and therefore not to be modified
+   */
   public static Settings getSettingsFor(PsiFile psiFile) {
-    Settings settings = null;
-    Project project = psiFile.getProject();
-    VirtualFile virtualFile = psiFile.getVirtualFile();
-    if (null != virtualFile) {
-      Module module = ModuleUtil.findModuleForFile(virtualFile, project);
-      if (null != module) {
-        settings = ModuleSettings.getInstance(module).getState();
-      }
-    } else {
-      settings = ProjectSettings.getInstance(project).getState();
-    }
-    if (null != settings) {
-      settings = settings.enrichWithProjectSettings(project);
-    }
-    return settings;
+    return EffectiveSettingsCache.getInstance(psiFile.getProject()).getSettingsFor(psiFile);
   }
 
   public Settings enrichWithProjectSettings(Project project) {
@@ -0,0 +1,120 @@
+package org.intellij.sonar.persistence;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+import com.intellij.util.xmlb.annotations.Tag;
+import org.intellij.sonar.index.SonarIssue;
+
+/**
+ * an issue as former versions stored it in sonarIssues.xml, read to take such an index over into the binary storage
+ */
+@Tag("SonarIssue")
+public class SonarIssueBean {
+
+  private String key;
+  private String ruleKey;
+  private Integer line;
+  private String message;
+  private String severity;
+  private Boolean isNew;
+
+  public SonarIssueBean() {
+  }
+
+  public static SonarIssueBean of(SonarIssue issue) {
+    final SonarIssueBean bean = new SonarIssueBean();
+    bean.key = issue.getKey();
+    bean.ruleKey = issue.getRuleKey();
+    bean.line = issue.getLine();
+    bean.message = issue.getMessage();
+    bean.severity = issue.getSeverity();
+    bean.isNew = issue.getIsNew();
+    return bean;
+  }
+
+  public SonarIssue toSonarIssue() {
+    return new SonarIssue(key, ruleKey, line, message, severity, isNew);
+  }
+
+  public String getKey() {
+    return key;
+  }
+
+  public void setKey(String key) {
+    this.key = key;
+  }
+
+  public String getRuleKey() {
+    return ruleKey;
+  }
+
+  public void setRuleKey(String ruleKey) {
+    this.ruleKey = ruleKey;
+  }
+
+  public Integer getLine() {
+    return line;
+  }
+
+  public void setLine(Integer line) {
+    this.line = line;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  public void setMessage(String message) {
+    this.message = message;
+  }
+
+  public String getSeverity() {
+    return severity;
+  }
+
+  public void setSeverity(String severity) {
+    this.severity = severity;
+  }
+
+  public Boolean getIsNew() {
+    return isNew;
+  }
+
+  public void setIsNew(Boolean isNew) {
+    this.isNew = isNew;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    SonarIssueBean that = (SonarIssueBean) o;
+    return Objects.equal(key, that.key) &&
+        Objects.equal(ruleKey, that.ruleKey) &&
+        Objects.equal(line, that.line) &&
+        Objects.equal(message, that.message) &&
+        Objects.equal(severity, that.severity) &&
+        Objects.equal(isNew, that.isNew);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(key, ruleKey, line, message, severity, isNew);
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(SonarIssueBean.class.getName())
+        .add("key", key)
+        .add("ruleKey", ruleKey)
+        .add("line", line)
+        .add("message", message)
+        .add("severity", severity)
+        .add("isNew", isNew)
+        .toString();
+  }
+}
@@ -13,6 +13,7 @@ import java.util.LinkedList;
 import java.util.Optional;
 import java.util.stream.Collectors;
 import org.apache.commons.lang.StringUtils;
+import org.intellij.sonar.sonarserver.SonarClientFactory;
 import org.jetbrains.annotations.NotNull;
 
 @State(
@@ -47,6 +48,7 @@ public class SonarServers implements PersistentStateComponent<SonarServers> {
       }
       newServerConfig.clearToken();
       newServerConfig.clearPassword();
+      SonarClientFactory.clearCachedClients();
     }
   }
 
@@ -56,6 +58,7 @@ public class SonarServers implements PersistentStateComponent<SonarServers> {
     getAll().ifPresent(serverConfigs -> getInstance().beans = serverConfigs.stream()
         .filter(serverConfigurationBean -> !bean.get().equals(serverConfigurationBean))
         .collect(Collectors.toCollection(LinkedList::new)));
+    SonarClientFactory.clearCachedClients();
   }
 
   public static Optional<SonarServerConfig> get(@NotNull final String sonarServerName) {
@@ -80,6 +83,7 @@ public class SonarServers implements PersistentStateComponent<SonarServers> {
   @Override
   public void loadState(@NotNull SonarServers state) {
     XmlSerializerUtil.copyBean(state, this);
+    SonarClientFactory.clearCachedClients();
   }
 
   @Override
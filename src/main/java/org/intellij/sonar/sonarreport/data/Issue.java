@@ -7,6 +7,10 @@ public class Issue {
   private final String key;
   private final String component;
   private final Integer line;
+  private final Integer startLine;
+  private final Integer startOffset;
+  private final Integer endLine;
+  private final Integer endOffset;
   private final String message;
   private final String severity;
   private final String rule;
@@ -17,6 +21,10 @@ public class Issue {
       String key,
       String component,
       Integer line,
+      Integer startLine,
+      Integer startOffset,
+      Integer endLine,
+      Integer endOffset,
       String message,
       String severity,
       String rule,
@@ -26,6 +34,10 @@ public class Issue {
     this.key = key;
     this.component = component;
     this.line = line;
+    this.startLine = startLine;
+    this.startOffset = startOffset;
+    this.endLine = endLine;
+    this.endOffset = endOffset;
     this.message = message;
     this.severity = severity;
     this.rule = rule;
@@ -45,6 +57,22 @@ public class Issue {
     return line;
   }
 
+  public Integer getStartLine() {
+    return startLine;
+  }
+
+  public Integer getStartOffset() {
+    return startOffset;
+  }
+
+  public Integer getEndLine() {
+    return endLine;
+  }
+
+  public Integer getEndOffset() {
+    return endOffset;
+  }
+
   public String getMessage() {
     return message;
   }
@@ -77,6 +105,10 @@ public class Issue {
     return Objects.equal(key, issue.key) &&
         Objects.equal(component, issue.component) &&
         Objects.equal(line, issue.line) &&
+        Objects.equal(startLine, issue.startLine) &&
+        Objects.equal(startOffset, issue.startOffset) &&
+        Objects.equal(endLine, issue.endLine) &&
+        Objects.equal(endOffset, issue.endOffset) &&
         Objects.equal(message, issue.message) &&
         Objects.equal(severity, issue.severity) &&
         Objects.equal(rule, issue.rule) &&
@@ -86,7 +118,9 @@ public class Issue {
 
   @Override
   public int hashCode() {
-    return Objects.hashCode(key, component, line, message, severity, rule, status, isNew);
+    return Objects.hashCode(
+        key, component, line, startLine, startOffset, endLine, endOffset, message, severity, rule, status, isNew
+    );
   }
 
   @Override
@@ -95,6 +129,10 @@ public class Issue {
         "key='" + key + '\'' +
         ", component='" + component + '\'' +
         ", line=" + line +
+        ", startLine=" + startLine +
+        ", startOffset=" + startOffset +
+        ", endLine=" + endLine +
+        ", endOffset=" + endOffset +
         ", message='" + message + '\'' +
         ", severity='" + severity + '\'' +
         ", rule='" + rule + '\'' +
@@ -0,0 +1,280 @@
+package org.intellij.sonar.sonarserver;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import org.sonarqube.ws.Common;
+import org.sonarqube.ws.Common.FacetValue;
+import org.sonarqube.ws.Issues.SearchWsResponse;
+import org.sonarqube.ws.client.issue.IssuesService;
+import org.sonarqube.ws.client.issue.SearchWsRequest;
+
+/**
+ * splits an issues query into shards which each stay under the search window of the server.
+ * <p>
+ * The facets of api/issues/search tell how many issues match each severity, type, directory and creation date bucket.
+ * As long as a shard matches more issues than the download limit it is split along the next of these dimensions whose
+ * facet values cover all issues of the shard.
+ * <p>
+ * Queries limited to some files are split into batches of component keys first, to keep the request URLs short.
+ */
+class IssuesDownloadPlanner {
+
+  private static final String SEVERITIES = "severities";
+  private static final String TYPES = "types";
+  private static final String DIRECTORIES = "directories";
+  private static final String CREATED_AT = "createdAt";
+  private static final List<String> FACETS = Arrays.asList(SEVERITIES, TYPES, DIRECTORIES, CREATED_AT);
+  private static final int MAX_SPLIT_DEPTH = 16;
+  private static final int COMPONENT_KEYS_PER_QUERY = 40;
+
+  private final IssuesService issuesService;
+  private final Supplier<SearchWsRequest> queryFactory;
+  private final int downloadLimit;
+
+  IssuesDownloadPlanner(IssuesService issuesService, Supplier<SearchWsRequest> queryFactory, int downloadLimit) {
+    this.issuesService = issuesService;
+    this.queryFactory = queryFactory;
+    this.downloadLimit = downloadLimit;
+  }
+
+  List<Shard> plan() {
+    return plan(Shard.ALL, 0);
+  }
+
+  /**
+   * @param componentKeys the keys of the files to download the issues for, or empty for all issues of the query
+   */
+  List<Shard> plan(Collection<String> componentKeys) {
+    if (componentKeys.isEmpty()) {
+      return plan();
+    }
+    final List<Shard> shards = new ArrayList<>();
+    for (List<String> batch : Iterables.partition(componentKeys, COMPONENT_KEYS_PER_QUERY)) {
+      shards.addAll(plan(Shard.ALL.withComponentKeys(ImmutableList.copyOf(batch)), 0));
+    }
+    return shards;
+  }
+
+  private List<Shard> plan(Shard shard, int depth) {
+    final SearchWsRequest query = shard.applyTo(queryFactory.get())
+        .setPageSize(1)
+        .setFacets(FACETS);
+    final SearchWsResponse response = issuesService.search(query);
+    final int total = response.getPaging().getTotal();
+    if (total <= downloadLimit) {
+      return singletonList(shard.withTotal(total, false));
+    }
+    if (depth < MAX_SPLIT_DEPTH) {
+      final Optional<List<Shard>> children = split(shard, query, total, facetValuesByProperty(response));
+      if (children.isPresent()) {
+        return children.get().stream()
+            .flatMap(child -> plan(child, depth + 1).stream())
+            .collect(toList());
+      }
+    }
+    return singletonList(shard.withTotal(total, true));
+  }
+
+  private static Map<String, List<FacetValue>> facetValuesByProperty(SearchWsResponse response) {
+    return response.getFacets().getFacetsList().stream()
+        .collect(Collectors.toMap(Common.Facet::getProperty, Common.Facet::getValuesList, (a, b) -> a));
+  }
+
+  private static Optional<List<Shard>> split(
+      Shard shard,
+      SearchWsRequest query,
+      int total,
+      Map<String, List<FacetValue>> facets
+  ) {
+    if (shard.severity == null) {
+      final List<String> severities = coveringValues(facets.get(SEVERITIES), query.getSeverities(), total);
+      if (severities.size() > 1) {
+        return Optional.of(severities.stream().map(shard::withSeverity).collect(toList()));
+      }
+    }
+    if (shard.type == null) {
+      final List<String> types = coveringValues(facets.get(TYPES), query.getTypes(), total);
+      if (types.size() > 1) {
+        return Optional.of(types.stream().map(shard::withType).collect(toList()));
+      }
+    }
+    if (shard.directory == null) {
+      final List<String> directories = coveringValues(facets.get(DIRECTORIES), null, total);
+      if (directories.size() > 1) {
+        return Optional.of(directories.stream().map(shard::withDirectory).collect(toList()));
+      }
+    }
+    final List<Shard> byCreationDate = splitByCreationDate(shard, facets.get(CREATED_AT));
+    if (byCreationDate.size() > 1) {
+      return Optional.of(byCreationDate);
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * @return the facet values having issues and allowed by the query, or an empty list if they do not cover all issues
+   */
+  private static List<String> coveringValues(List<FacetValue> facetValues, List<String> allowedValues, int total) {
+    if (facetValues == null) {
+      return emptyList();
+    }
+    final List<FacetValue> values = facetValues.stream()
+        .filter(value -> value.getCount() > 0)
+        .filter(value -> allowedValues == null || allowedValues.isEmpty() || allowedValues.contains(value.getVal()))
+        .collect(toList());
+    final long coveredIssuesCount = values.stream().mapToLong(FacetValue::getCount).sum();
+    if (coveredIssuesCount < total) {
+      return emptyList();
+    }
+    return values.stream().map(FacetValue::getVal).collect(toList());
+  }
+
+  /**
+   * splits the creation period of the shard at the start of each non empty bucket of the createdAt facet. The first and
+   * the last shard keep the bounds of the split shard, so issues created right at the edges are not lost.
+   */
+  private static List<Shard> splitByCreationDate(Shard shard, List<FacetValue> buckets) {
+    if (buckets == null) {
+      return emptyList();
+    }
+    final List<FacetValue> sortedBuckets = buckets.stream()
+        .sorted(Comparator.comparing(FacetValue::getVal))
+        .collect(toList());
+    final List<Integer> nonEmptyBuckets = new ArrayList<>();
+    for (int i = 0; i < sortedBuckets.size(); i++) {
+      if (sortedBuckets.get(i).getCount() > 0) {
+        nonEmptyBuckets.add(i);
+      }
+    }
+    final List<Shard> shards = new ArrayList<>(nonEmptyBuckets.size());
+    for (int i = 0; i < nonEmptyBuckets.size(); i++) {
+      final int bucket = nonEmptyBuckets.get(i);
+      final boolean first = i == 0;
+      final boolean last = i == nonEmptyBuckets.size() - 1;
+      final String createdAfter = first ? shard.createdAfter : sortedBuckets.get(bucket).getVal();
+      final String createdBefore = last ? shard.createdBefore : sortedBuckets.get(bucket + 1).getVal();
+      shards.add(shard.withCreationPeriod(createdAfter, createdBefore));
+    }
+    return shards;
+  }
+
+  static final class Shard {
+
+    private static final Shard ALL = new Shard(null, null, null, null, null, null, 0, false);
+
+    private final List<String> componentKeys;
+    private final String severity;
+    private final String type;
+    private final String directory;
+    private final String createdAfter;
+    private final String createdBefore;
+    private final int total;
+    private final boolean truncated;
+
+    private Shard(List<String> componentKeys, String severity, String type, String directory, String createdAfter,
+        String createdBefore, int total, boolean truncated) {
+      this.componentKeys = componentKeys;
+      this.severity = severity;
+      this.type = type;
+      this.directory = directory;
+      this.createdAfter = createdAfter;
+      this.createdBefore = createdBefore;
+      this.total = total;
+      this.truncated = truncated;
+    }
+
+    SearchWsRequest applyTo(SearchWsRequest query) {
+      if (componentKeys != null) {
+        // the component roots would take precedence over the keys of the files
+        query.setComponentRoots(null).setComponentKeys(componentKeys);
+      }
+      if (severity != null) {
+        query.setSeverities(singletonList(severity));
+      }
+      if (type != null) {
+        query.setTypes(singletonList(type));
+      }
+      if (directory != null) {
+        query.setDirectories(singletonList(directory));
+      }
+      if (createdAfter != null) {
+        query.setCreatedAfter(createdAfter);
+      }
+      if (createdBefore != null) {
+        query.setCreatedBefore(createdBefore);
+      }
+      return query;
+    }
+
+    /**
+     * @return the number of pages needed to download the issues of this shard, never more than the download limit allows
+     */
+    int getPages(int pageSize, int downloadLimit) {
+      final int issuesCount = Math.min(total, downloadLimit);
+      return issuesCount / pageSize + (issuesCount % pageSize > 0 ? 1 : 0);
+    }
+
+    int getTotal() {
+      return total;
+    }
+
+    /**
+     * @return true if this shard matches more issues than the download limit and could not be split any further
+     */
+    boolean isTruncated() {
+      return truncated;
+    }
+
+    private Shard withComponentKeys(List<String> componentKeys) {
+      return new Shard(componentKeys, severity, type, directory, createdAfter, createdBefore, 0, false);
+    }
+
+    private Shard withSeverity(String severity) {
+      return new Shard(componentKeys, severity, type, directory, createdAfter, createdBefore, 0, false);
+    }
+
+    private Shard withType(String type) {
+      return new Shard(componentKeys, severity, type, directory, createdAfter, createdBefore, 0, false);
+    }
+
+    private Shard withDirectory(String directory) {
+      return new Shard(componentKeys, severity, type, directory, createdAfter, createdBefore, 0, false);
+    }
+
+    private Shard withCreationPeriod(String createdAfter, String createdBefore) {
+      return new Shard(componentKeys, severity, type, directory, createdAfter, createdBefore, 0, false);
+    }
+
+    private Shard withTotal(int total, boolean truncated) {
+      return new Shard(componentKeys, severity, type, directory, createdAfter, createdBefore, total, truncated);
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+          .omitNullValues()
+          .add("componentKeys", componentKeys == null ? null : componentKeys.size())
+          .add("severity", severity)
+          .add("type", type)
+          .add("directory", directory)
+          .add("createdAfter", createdAfter)
+          .add("createdBefore", createdBefore)
+          .add("total", total)
+          .toString();
+    }
+  }
+}
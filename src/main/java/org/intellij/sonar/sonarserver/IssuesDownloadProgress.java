@@ -0,0 +1,11 @@
+package org.intellij.sonar.sonarserver;
+
+/**
+ * receives the progress of an issues download and tells the download whether it should stop
+ */
+public interface IssuesDownloadProgress {
+
+  boolean isCanceled();
+
+  void pagesDownloaded(int downloadedPages, int pages);
+}
@@ -10,8 +10,11 @@ import com.intellij.util.proxy.CommonProxy;
 import java.net.MalformedURLException;
 import java.net.Proxy;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.commons.lang.StringUtils;
 import org.intellij.sonar.persistence.SonarServerConfig;
 import org.sonarqube.ws.client.HttpConnector;
@@ -21,6 +24,8 @@ import org.sonarqube.ws.client.WsClientFactories;
 public class SonarClientFactory {
 
   private static final Logger LOG = Logger.getInstance(SonarClientFactory.class);
+  // long-lived clients keep their connection pool, so requests reuse open connections instead of new TLS handshakes
+  private static final Map<String, CachedClient> CLIENTS = new ConcurrentHashMap<>();
   private int connectTimeoutInMilliseconds;
   private int readTimeoutInMilliseconds;
   private SonarServerConfig sonarServerConfig;
@@ -29,7 +34,51 @@ public class SonarClientFactory {
     return new SonarClientFactory();
   }
 
-  WsClient createSonarClient() {
+  /**
+   * drops all cached clients, to be called whenever the server configurations change. Changes of the proxy settings
+   * replace the client of a server on its next use, except for the proxy credentials alone, which are not read
+   * again until the cached clients are dropped.
+   */
+  public static void clearCachedClients() {
+    CLIENTS.clear();
+  }
+
+  /**
+   * @return the cached client of the server, created on first use and replaced once the server config, timeouts or
+   * proxy settings it was created with change
+   */
+  WsClient getSonarClient() {
+    final List<Object> settings = getClientSettings();
+    return CLIENTS.compute(
+        sonarServerConfig.getName(),
+        (name, cached) -> cached != null && cached.settings.equals(settings)
+            ? cached
+            : new CachedClient(settings, createSonarClient())
+    ).client;
+  }
+
+  /**
+   * @return the settings the client is created with, without the proxy credentials, as they are kept in the password
+   * safe, which is too slow to be read on every request
+   */
+  private List<Object> getClientSettings() {
+    final HttpConfigurable proxySettings = HttpConfigurable.getInstance();
+    return Arrays.asList(
+        sonarServerConfig.getHostUrl(),
+        sonarServerConfig.isAnonymous(),
+        sonarServerConfig.getUser(),
+        connectTimeoutInMilliseconds,
+        readTimeoutInMilliseconds,
+        proxySettings.USE_HTTP_PROXY,
+        proxySettings.USE_PROXY_PAC,
+        proxySettings.PROXY_HOST,
+        proxySettings.PROXY_PORT,
+        proxySettings.PROXY_EXCEPTIONS,
+        proxySettings.PROXY_AUTHENTICATION
+    );
+  }
+
+  private WsClient createSonarClient() {
     String hostUrl = removeEnd(sonarServerConfig.getHostUrl(), "/");
     CertificateManager certificateManager = CertificateManager.getInstance();
 
@@ -93,4 +142,15 @@ public class SonarClientFactory {
     this.sonarServerConfig = sonarServerConfig;
     return this;
   }
+
+  private static class CachedClient {
+
+    private final List<Object> settings;
+    private final WsClient client;
+
+    CachedClient(List<Object> settings, WsClient client) {
+      this.settings = settings;
+      this.client = client;
+    }
+  }
 }
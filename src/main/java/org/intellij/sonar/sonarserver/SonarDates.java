@@ -0,0 +1,44 @@
+package org.intellij.sonar.sonarserver;
+
+import com.google.common.base.Strings;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+
+/**
+ * dates as returned by the SonarQube web services, like 2017-09-15T10:20:30+0200
+ */
+public final class SonarDates {
+
+  private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssZ");
+
+  private SonarDates() {
+  }
+
+  public static Optional<OffsetDateTime> parse(String sonarDate) {
+    if (Strings.isNullOrEmpty(sonarDate)) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(OffsetDateTime.parse(sonarDate, DATE_TIME_FORMAT));
+    } catch (DateTimeParseException e) {
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * @return the later of both dates, ignoring dates which cannot be parsed
+   */
+  public static String latest(String sonarDate, String otherSonarDate) {
+    final Optional<OffsetDateTime> date = parse(sonarDate);
+    final Optional<OffsetDateTime> otherDate = parse(otherSonarDate);
+    if (!date.isPresent()) {
+      return otherDate.isPresent() ? otherSonarDate : null;
+    }
+    if (!otherDate.isPresent()) {
+      return sonarDate;
+    }
+    return otherDate.get().isAfter(date.get()) ? otherSonarDate : sonarDate;
+  }
+}
@@ -12,13 +12,26 @@ import com.intellij.notification.Notifications;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.util.registry.Registry;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import java.time.OffsetDateTime;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.intellij.sonar.analysis.SonarQubeInspectionContext;
@@ -26,10 +39,9 @@ import org.intellij.sonar.analysis.SonarQubeInspectionContext.EnrichedSettings;
 import org.intellij.sonar.configuration.SonarQualifier;
 import org.intellij.sonar.persistence.Resource;
 import org.intellij.sonar.persistence.SonarServerConfig;
-import org.intellij.sonar.util.ProgressIndicatorUtil;
+import org.intellij.sonar.util.FutureUtil;
 import org.sonarqube.ws.Common;
 import org.sonarqube.ws.Issues.Issue;
-import org.sonarqube.ws.Issues.SearchWsResponse;
 import org.sonarqube.ws.Rules;
 import org.sonarqube.ws.WsComponents;
 import org.sonarqube.ws.WsComponents.Component;
@@ -43,6 +55,11 @@ public class SonarServer {
   private static final int CONNECT_TIMEOUT_IN_MILLISECONDS = 60_1000;
   private static final int READ_TIMEOUT_IN_MILLISECONDS = 60_1000;
   private static final int DOWNLOAD_LIMIT = 10_000;
+  private static final int PAGE_SIZE = 500;
+  private static final String UPDATE_DATE_SORT = "UPDATE_DATE";
+  private static final String DOWNLOAD_PARALLELISM_REGISTRY_KEY = "sonar.issues.download.parallelism";
+  private static final int DEFAULT_DOWNLOAD_PARALLELISM = 4;
+  private static final int PAGES_IN_FLIGHT_PER_THREAD = 2;
   private final WsClient sonarClient;
   private final SonarServerConfig sonarServerConfig;
 
@@ -51,7 +68,7 @@ public class SonarServer {
         .connectTimeoutInMs(CONNECT_TIMEOUT_IN_MILLISECONDS)
         .readTimeoutInMs(READ_TIMEOUT_IN_MILLISECONDS)
         .sonarServerConfig(sonarServerConfig)
-        .createSonarClient();
+        .getSonarClient();
     this.sonarServerConfig = sonarServerConfig;
   }
 
@@ -126,35 +143,140 @@ public class SonarServer {
     return sonarClient.components().tree(query).getComponentsList();
   }
 
-  public ImmutableList<Issue> getAllIssuesFor(String resourceKey, String organization,
-      SonarQubeInspectionContext.EnrichedSettings enrichedSettings) {
+  /**
+   * downloads all unresolved issues of the resource and hands them page by page to the consumer as soon as a page
+   * arrives, so the issues of the whole resource are never held in memory at once
+   *
+   * @param componentKeys the keys of the files to download the issues for, or empty for all files of the resource
+   */
+  public void downloadAllIssuesFor(String resourceKey, String organization,
+      SonarQubeInspectionContext.EnrichedSettings enrichedSettings, Collection<String> componentKeys,
+      IssuesDownloadProgress progress, Consumer<List<Issue>> pageConsumer) {
+    IssuesService issuesService = sonarClient.issues();
+    Supplier<SearchWsRequest> queryFactory = () -> createIssuesQuery(resourceKey, organization, enrichedSettings);
+    List<IssuesDownloadPlanner.Shard> shards = new IssuesDownloadPlanner(issuesService, queryFactory, DOWNLOAD_LIMIT)
+        .plan(componentKeys);
+    shards.stream()
+        .filter(IssuesDownloadPlanner.Shard::isTruncated)
+        .forEach(shard -> showWarningIfDownloadLimitReached(resourceKey, shard));
+    List<SearchWsRequest> pageQueries = new ArrayList<>();
+    for (IssuesDownloadPlanner.Shard shard : shards) {
+      int pages = shard.getPages(PAGE_SIZE, DOWNLOAD_LIMIT);
+      for (int pageIndex = 1; pageIndex <= pages; pageIndex++) {
+        pageQueries.add(shard.applyTo(queryFactory.get()).setPage(pageIndex));
+      }
+    }
+    downloadPages(issuesService, pageQueries, progress, pageConsumer);
+  }
+
+  /**
+   * downloads the issues of the resource which were created, updated, resolved or closed since the given update date,
+   * newest first. The issues web service has no filter on the update date, so the issues are sorted by it and the
+   * download stops at the first issue updated before the given date.
+   *
+   * @return the changed issues, or empty if more issues changed than a single query can download
+   */
+  public Optional<ImmutableList<Issue>> getIssuesChangedSince(String resourceKey, String organization,
+      SonarQubeInspectionContext.EnrichedSettings enrichedSettings, String sinceUpdateDate,
+      IssuesDownloadProgress progress) {
+    final OffsetDateTime since = SonarDates.parse(sinceUpdateDate).orElse(OffsetDateTime.MIN);
     final ImmutableList.Builder<Issue> builder = ImmutableList.builder();
+    final IssuesService issuesService = sonarClient.issues();
+    final int maxPages = DOWNLOAD_LIMIT / PAGE_SIZE;
+    for (int pageIndex = 1; pageIndex <= maxPages && !progress.isCanceled(); pageIndex++) {
+      SearchWsRequest query = createIssuesQuery(resourceKey, organization, enrichedSettings)
+          .setResolved(null)
+          .setSort(UPDATE_DATE_SORT)
+          .setAsc(false)
+          .setPage(pageIndex);
+      List<Issue> pageIssues = issuesService.search(query).getIssuesList();
+      for (Issue issue : pageIssues) {
+        final boolean updatedBefore = SonarDates.parse(issue.getUpdateDate())
+            .map(updateDate -> updateDate.isBefore(since))
+            .orElse(false);
+        if (updatedBefore) {
+          return Optional.of(builder.build());
+        }
+        builder.add(issue);
+      }
+      progress.pagesDownloaded(pageIndex, pageIndex + 1);
+      if (pageIssues.size() < PAGE_SIZE) {
+        return Optional.of(builder.build());
+      }
+    }
+    return progress.isCanceled() ? Optional.of(builder.build()) : Optional.empty();
+  }
+
+  /**
+   * @return the latest update date of the issues of the resource, resolved or not. The web services tell the time of
+   * the server to administrators only, so this date stands in for it when a download starts: issues changing while the
+   * download runs get a later update date and are downloaded again by the next sync.
+   */
+  public Optional<String> getLastUpdateDate(String resourceKey, String organization,
+      SonarQubeInspectionContext.EnrichedSettings enrichedSettings) {
+    SearchWsRequest query = createIssuesQuery(resourceKey, organization, enrichedSettings)
+        .setResolved(null)
+        .setSort(UPDATE_DATE_SORT)
+        .setAsc(false)
+        .setPageSize(1);
+    return sonarClient.issues().search(query).getIssuesList().stream()
+        .findFirst()
+        .map(Issue::getUpdateDate)
+        .filter(updateDate -> !updateDate.isEmpty());
+  }
+
+  private SearchWsRequest createIssuesQuery(String resourceKey, String organization, EnrichedSettings enrichedSettings) {
     SearchWsRequest query = new SearchWsRequest();
-    query.setComponentRoots(singletonList(resourceKey)).setResolved(false).setPageSize(500);
+    query.setComponentRoots(singletonList(resourceKey)).setResolved(false).setPageSize(PAGE_SIZE);
     setExtraParams(enrichedSettings, query); // Params for filtering issues
     query.setProjectKeys(singletonList(resourceKey));
     addSearchParameter(organization, query::setOrganization);
-    IssuesService issuesService = sonarClient.issues();
-    SearchWsResponse response = issuesService.search(query);
-    builder.addAll(response.getIssuesList());
-    Common.Paging paging = response.getPaging();
-    showWarningIfDownloadLimitReached(paging);
-    Integer total = Math.min(paging.getTotal(), DOWNLOAD_LIMIT);
-    Integer pageSize = paging.getPageSize();
-    Integer pages = total / pageSize + (total % pageSize > 0 ? 1 : 0);
-    for (int pageIndex = 2; pageIndex <= pages; pageIndex++) {
-      final ProgressIndicator progressIndicator = ProgressManager.getInstance().getProgressIndicator();
-      if (progressIndicator.isCanceled()) {
-        break;
-      }
-      final String pagesProgressMessage = String.format("%d / %d pages downloaded", pageIndex, pages);
-      ProgressIndicatorUtil.setText(progressIndicator, pagesProgressMessage);
-      ProgressIndicatorUtil.setFraction(progressIndicator, pageIndex * 1.0 / pages);
+    return query;
+  }
 
-      query.setPage(pageIndex);
-      builder.addAll(issuesService.search(query).getIssuesList());
+  /**
+   * downloads the pages concurrently, at most {@link #getDownloadParallelism()} at a time, and hands their issues in page
+   * order and without duplicates to the consumer. Only a few pages are requested ahead of the consumer, so a slow
+   * consumer slows down the download instead of piling up pages. If the download gets canceled the requests still in
+   * flight are aborted.
+   */
+  private void downloadPages(IssuesService issuesService, List<SearchWsRequest> pageQueries,
+      IssuesDownloadProgress progress, Consumer<List<Issue>> pageConsumer) {
+    final int parallelism = getDownloadParallelism();
+    final ExecutorService executor = AppExecutorUtil.createBoundedApplicationPoolExecutor(
+        "SonarQube Issues Download", parallelism
+    );
+    final int maxPagesInFlight = PAGES_IN_FLIGHT_PER_THREAD * parallelism;
+    final Iterator<SearchWsRequest> queries = pageQueries.iterator();
+    final Deque<Future<List<Issue>>> pagesInFlight = new ArrayDeque<>(maxPagesInFlight);
+    final Set<String> downloadedIssueKeys = new HashSet<>();
+    try {
+      for (int pageIndex = 1; pageIndex <= pageQueries.size(); pageIndex++) {
+        while (pagesInFlight.size() < maxPagesInFlight && queries.hasNext()) {
+          final SearchWsRequest query = queries.next();
+          pagesInFlight.add(executor.submit(() -> issuesService.search(query).getIssuesList()));
+        }
+        final Optional<List<Issue>> pageIssues = FutureUtil.awaitUnlessCanceled(
+            pagesInFlight.remove(), progress::isCanceled
+        );
+        if (!pageIssues.isPresent()) {
+          break;
+        }
+        pageConsumer.accept(
+            pageIssues.get().stream()
+                .filter(issue -> downloadedIssueKeys.add(issue.getKey()))
+                .collect(toList())
+        );
+        progress.pagesDownloaded(pageIndex, pageQueries.size());
+      }
+    } finally {
+      pagesInFlight.forEach(future -> future.cancel(true));
+      executor.shutdown();
     }
-    return builder.build();
+  }
+
+  private static int getDownloadParallelism() {
+    return Math.max(1, Registry.intValue(DOWNLOAD_PARALLELISM_REGISTRY_KEY, DEFAULT_DOWNLOAD_PARALLELISM));
   }
 
   private void setExtraParams(EnrichedSettings enrichedSettings, SearchWsRequest query) {
@@ -210,15 +332,14 @@ public class SonarServer {
     }
   }
 
-  private void showWarningIfDownloadLimitReached(Common.Paging paging) {
-    if (paging.getTotal() > DOWNLOAD_LIMIT) {
-      Notifications.Bus.notify(new Notification(
-          "SonarQube", "SonarQube",
-          String.format("Your project has %d issues, downloading instead the maximum amount of %s. ",
-              paging.getTotal(), DOWNLOAD_LIMIT),
-          NotificationType.WARNING
-      ));
-    }
+  private void showWarningIfDownloadLimitReached(String resourceKey, IssuesDownloadPlanner.Shard shard) {
+    Notifications.Bus.notify(new Notification(
+        "SonarQube", "SonarQube",
+        String.format("%d issues of %s could not be split into queries below the download limit of %d, "
+                + "downloading instead the maximum amount of %d. (%s)",
+            shard.getTotal(), resourceKey, DOWNLOAD_LIMIT, DOWNLOAD_LIMIT, shard),
+        NotificationType.WARNING
+    ));
   }
 
   private void addSearchParameter(String paramValue, Consumer<String> consumer) {
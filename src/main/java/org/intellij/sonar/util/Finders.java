@@ -1,33 +1,31 @@
 package org.intellij.sonar.util;
 
-import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
-import com.intellij.openapi.application.ApplicationManager;
-import com.intellij.openapi.application.ModalityState;
 import com.intellij.openapi.editor.Document;
-import com.intellij.openapi.editor.Editor;
-import com.intellij.openapi.editor.EditorFactory;
-import com.intellij.openapi.editor.LogicalPosition;
-import com.intellij.openapi.editor.markup.MarkupModel;
-import com.intellij.openapi.editor.markup.RangeHighlighter;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.psi.PsiDocumentManager;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
-import java.util.List;
 import java.util.Optional;
-import java.util.Set;
+import org.intellij.sonar.index.IssueTextRange;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 public class Finders {
 
   public static Optional<PsiElement> findFirstElementAtLine(@NotNull final PsiFile file, Integer line) {
+    return findFirstElementAtLine(file, PsiDocumentManager.getInstance(file.getProject()).getDocument(file), line);
+  }
+
+  public static Optional<PsiElement> findFirstElementAtLine(
+      @NotNull final PsiFile file,
+      @Nullable final Document document,
+      Integer line
+  ) {
     if (line == null) {
       return Optional.empty();
     }
     int ijLine = line - 1;
-    final Document document = PsiDocumentManager.getInstance(file.getProject()).getDocument(file);
     Optional<PsiElement> element = getFirstSiblingFrom(file, ijLine, document);
     while (element.isPresent() && element.get().getTextLength() == 0) {
       element = Optional.ofNullable(element.get().getNextSibling());
@@ -61,49 +59,6 @@ public class Finders {
     return Optional.ofNullable(PsiDocumentManager.getInstance(project).getDocument(psiFile));
   }
 
-  @NotNull
-  public static List<Editor> findEditorsFrom(@NotNull Document document) {
-    return Lists.newArrayList(EditorFactory.getInstance().getEditors(document));
-  }
-
-  @NotNull
-  public static Optional<RangeHighlighter> findRangeHighlighterAtLine(final Editor editor, final Integer line) {
-    if (line == null) {
-      return Optional.empty();
-    }
-    final MarkupModel markupModel = editor.getMarkupModel();
-    final RangeHighlighter[] highlighters = markupModel.getAllHighlighters();
-    for (RangeHighlighter highlighter : highlighters) {
-      final LogicalPosition logicalPosition = editor.offsetToLogicalPosition(highlighter.getStartOffset());
-      final int lineOfHighlighter = logicalPosition.line;
-      if (lineOfHighlighter == line - 1) {
-        return Optional.of(highlighter);
-      }
-    }
-    return Optional.empty();
-  }
-
-  @NotNull
-  public static Set<RangeHighlighter> findAllRangeHighlightersFrom(@NotNull Document document) {
-    final Set<RangeHighlighter> highlighters = Sets.newHashSet();
-    for (final Editor editor : findEditorsFrom(document)) {
-      addHighlightersFromEditor(highlighters, editor);
-    }
-    return highlighters;
-  }
-
-  private static void addHighlightersFromEditor(final Set<RangeHighlighter> highlighters, final Editor editor) {
-    ApplicationManager.getApplication().invokeAndWait(() -> {
-      final RangeHighlighter[] highlightersFromCurrentEditor = editor.getMarkupModel().getAllHighlighters();
-      highlighters.addAll(Sets.newHashSet(highlightersFromCurrentEditor));
-    }, ModalityState.any());
-  }
-
-  public static int findLineOfRangeHighlighter(@NotNull RangeHighlighter highlighter, @NotNull Editor editor) {
-    final LogicalPosition logicalPosition = editor.offsetToLogicalPosition(highlighter.getStartOffset());
-    return logicalPosition.line;
-  }
-
   @NotNull
   public static TextRange getLineRange(@NotNull PsiFile psiFile, Integer line) {
     if (line == null) {
@@ -111,8 +66,12 @@ public class Finders {
     }
     Project project = psiFile.getProject();
     PsiDocumentManager documentManager = PsiDocumentManager.getInstance(project);
-    Document document = documentManager.getDocument(psiFile.getContainingFile());
-    if (document == null) {
+    return getLineRange(documentManager.getDocument(psiFile.getContainingFile()), line);
+  }
+
+  @NotNull
+  public static TextRange getLineRange(@Nullable Document document, Integer line) {
+    if (line == null || document == null) {
       return TextRange.EMPTY_RANGE;
     }
     int ijLine = line > 0
@@ -132,10 +91,37 @@ public class Finders {
     }
   }
 
+  /**
+   * @return the offsets of the text range in the document, empty if the document does not have the lines of the range
+   * or the range is empty
+   */
+  public static Optional<TextRange> getTextRange(@NotNull Document document, @NotNull IssueTextRange textRange) {
+    final int startLine = textRange.getStartLine() - 1;
+    final int endLine = textRange.getEndLine() - 1;
+    if (startLine < 0 || endLine < startLine || endLine >= document.getLineCount()) {
+      return Optional.empty();
+    }
+    final int startOffset = Math.min(
+        document.getLineStartOffset(startLine) + textRange.getStartLineOffset(),
+        document.getLineEndOffset(startLine)
+    );
+    final int endOffset = Math.min(
+        document.getLineStartOffset(endLine) + textRange.getEndLineOffset(),
+        document.getLineEndOffset(endLine)
+    );
+    return startOffset < endOffset ? Optional.of(new TextRange(startOffset, endOffset)) : Optional.empty();
+  }
+
   public static TextRange getLineRange(@NotNull PsiElement psiElement) {
     Project project = psiElement.getProject();
     PsiDocumentManager documentManager = PsiDocumentManager.getInstance(project);
-    Document document = documentManager.getDocument(psiElement.getContainingFile().getContainingFile());
+    return getLineRange(documentManager.getDocument(psiElement.getContainingFile().getContainingFile()), psiElement);
+  }
+
+  /**
+   * @return the range from the element to the end of its line
+   */
+  public static TextRange getLineRange(@Nullable Document document, @NotNull PsiElement psiElement) {
     if (document == null) {
       return TextRange.EMPTY_RANGE;
     }
@@ -0,0 +1,41 @@
+package org.intellij.sonar.util;
+
+import com.google.common.base.Throwables;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+
+public final class FutureUtil {
+
+  private static final long CANCELLATION_CHECK_INTERVAL_IN_MILLISECONDS = 100;
+
+  private FutureUtil() {
+  }
+
+  /**
+   * waits for the result of the future, checking for cancellation every 100 ms
+   *
+   * @return the result of the future or empty if canceled or interrupted before the result was available
+   */
+  public static <T> Optional<T> awaitUnlessCanceled(Future<T> future, BooleanSupplier isCanceled) {
+    while (true) {
+      if (isCanceled.getAsBoolean()) {
+        return Optional.empty();
+      }
+      try {
+        return Optional.ofNullable(future.get(CANCELLATION_CHECK_INTERVAL_IN_MILLISECONDS, TimeUnit.MILLISECONDS));
+      } catch (TimeoutException e) {
+        // check for cancellation and wait again
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return Optional.empty();
+      } catch (ExecutionException e) {
+        Throwables.throwIfUnchecked(e.getCause());
+        throw new IllegalStateException(e.getCause());
+      }
+    }
+  }
+}
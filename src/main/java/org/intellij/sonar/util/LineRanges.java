@@ -0,0 +1,75 @@
+package org.intellij.sonar.util;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * the line ranges and first elements of the lines of a file for one pass over its issues. The document is looked up
+ * once and every line is resolved once however many issues are on it. What is resolved is dropped as soon as the
+ * modification stamp of the document changes.
+ */
+public class LineRanges {
+
+  private final PsiFile psiFile;
+  private final Document document;
+  private long modificationStamp;
+  private final Map<Integer, TextRange> lineRanges = new HashMap<>();
+  private final Map<Integer, Optional<PsiElement>> firstElements = new HashMap<>();
+
+  private LineRanges(PsiFile psiFile, Document document) {
+    this.psiFile = psiFile;
+    this.document = document;
+    this.modificationStamp = document == null ? 0 : document.getModificationStamp();
+  }
+
+  public static LineRanges of(@NotNull PsiFile psiFile) {
+    return new LineRanges(psiFile, Finders.findDocumentFromPsiFile(psiFile).orElse(null));
+  }
+
+  public Optional<Document> getDocument() {
+    return Optional.ofNullable(document);
+  }
+
+  /**
+   * @see Finders#getLineRange(PsiFile, Integer)
+   */
+  @NotNull
+  public TextRange getLineRange(Integer line) {
+    if (line == null || document == null) {
+      return TextRange.EMPTY_RANGE;
+    }
+    return resolved().lineRanges.computeIfAbsent(line, it -> Finders.getLineRange(document, it));
+  }
+
+  /**
+   * @see Finders#findFirstElementAtLine(PsiFile, Integer)
+   */
+  public Optional<PsiElement> findFirstElementAtLine(Integer line) {
+    if (line == null) {
+      return Optional.empty();
+    }
+    return resolved().firstElements.computeIfAbsent(line, it -> Finders.findFirstElementAtLine(psiFile, document, it));
+  }
+
+  /**
+   * @see Finders#getLineRange(PsiElement)
+   */
+  public TextRange getLineRange(@NotNull PsiElement psiElement) {
+    return Finders.getLineRange(document, psiElement);
+  }
+
+  private LineRanges resolved() {
+    if (document != null && document.getModificationStamp() != modificationStamp) {
+      lineRanges.clear();
+      firstElements.clear();
+      modificationStamp = document.getModificationStamp();
+    }
+    return this;
+  }
+}
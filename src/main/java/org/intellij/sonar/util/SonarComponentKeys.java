@@ -0,0 +1,59 @@
+package org.intellij.sonar.util;
+
+import com.google.common.collect.Maps;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * derives the SonarQube component keys of local files from the components resolved to files before. The key of a
+ * component ends like the path of its file from some directory on, so the part of the key before tells how the keys of
+ * the files below that directory start, like sonar:project: for /path/to/project/ or sonar:project:module: for
+ * /path/to/project/module/.
+ */
+public class SonarComponentKeys {
+
+  private SonarComponentKeys() {
+  }
+
+  /**
+   * @param componentKey like sonar:project:src/main/java/Clazz.java
+   * @param filePath the file the component resolved to, like /path/to/project/src/main/java/Clazz.java
+   * @return the path of the directory from which on the key and the path end alike, like /path/to/project/, and the
+   * part of the key before, like sonar:project:, empty if they do not end alike from a directory on
+   */
+  public static Optional<Map.Entry<String, String>> prefixesOf(String componentKey, String filePath) {
+    int keyIndex = componentKey.length();
+    int pathIndex = filePath.length();
+    while (keyIndex > 0 && pathIndex > 0 && componentKey.charAt(keyIndex - 1) == filePath.charAt(pathIndex - 1)) {
+      keyIndex--;
+      pathIndex--;
+    }
+    // the common end is taken from the first file or directory name in it on
+    for (; pathIndex < filePath.length(); keyIndex++, pathIndex++) {
+      if (keyIndex > 0 && pathIndex > 0
+          && filePath.charAt(pathIndex - 1) == '/' && isSeparator(componentKey.charAt(keyIndex - 1))) {
+        return Optional.of(Maps.immutableEntry(filePath.substring(0, pathIndex), componentKey.substring(0, keyIndex)));
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * @param keyPrefixByPathPrefix the key prefixes by the path prefixes, as returned by {@link #prefixesOf}
+   * @return the component key of the file, derived from the key prefix of its closest directory, empty if no key prefix
+   * of its directories is known
+   */
+  public static Optional<String> componentKeyOf(String filePath, Map<String, String> keyPrefixByPathPrefix) {
+    for (int end = filePath.lastIndexOf('/'); end >= 0; end = filePath.lastIndexOf('/', end - 1)) {
+      final String keyPrefix = keyPrefixByPathPrefix.get(filePath.substring(0, end + 1));
+      if (keyPrefix != null) {
+        return Optional.of(keyPrefix + filePath.substring(end + 1));
+      }
+    }
+    return Optional.empty();
+  }
+
+  private static boolean isSeparator(char c) {
+    return c == ':' || c == '/';
+  }
+}
@@ -0,0 +1,130 @@
+package org.intellij.sonar.util;
+
+import static com.intellij.openapi.util.text.StringUtil.isEmptyOrSpaces;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * finds the files of sonar components without comparing every component with every file: the file paths are kept
+ * reversed in a sorted map, so all paths ending with a key are one range of the map. The file key is parsed in place as
+ * offsets into the component, so finding the files of a component runs no regular expression and only builds the
+ * reversed keys to look up.
+ */
+public class SonarComponentToFileIndex {
+
+  private static final String JAVA_EXTENSION = ".java";
+
+  private final String resourceKeyFromConfiguration;
+  private final String resourceKeyPrefix;
+  // the full file paths by their reversed paths
+  private final NavigableMap<String, String> filePathsByReversedPath = new TreeMap<>();
+
+  /**
+   * @param resourceKeyFromConfiguration like sonar:project, or null if the files have no resource configured
+   * @param fullFilePathsFromLocalFileSystem like /path/to/a.file
+   */
+  public SonarComponentToFileIndex(
+      String resourceKeyFromConfiguration,
+      Collection<String> fullFilePathsFromLocalFileSystem
+  ) {
+    this.resourceKeyFromConfiguration = resourceKeyFromConfiguration;
+    this.resourceKeyPrefix = isEmptyOrSpaces(resourceKeyFromConfiguration) ? null : resourceKeyFromConfiguration + ":";
+    for (String fullFilePath : fullFilePathsFromLocalFileSystem) {
+      if (!isEmptyOrSpaces(fullFilePath)) {
+        filePathsByReversedPath.put(new StringBuilder(fullFilePath).reverse().toString(), fullFilePath);
+      }
+    }
+  }
+
+  /**
+   * @param componentFrom like sonar:project:src/main/java/org/sonar/batch/DefaultSensorContext.java
+   * @return the full paths of the files the component corresponds to
+   */
+  public Set<String> findFiles(String componentFrom) {
+    if (isEmptyOrSpaces(componentFrom)) {
+      return Collections.emptySet();
+    }
+    if (resourceKeyPrefix != null && !componentFrom.startsWith(resourceKeyFromConfiguration)) {
+      return Collections.emptySet();
+    }
+    String component = componentFrom;
+    // file key from component, like src/main/java/org/sonar/batch/DefaultSensorContext.java
+    final int fileKeyStart;
+    if (resourceKeyPrefix == null) {
+      fileKeyStart = startOfKeyAfterLastColon(component);
+    } else if (component.indexOf(resourceKeyPrefix, 1) >= 0) {
+      // the resource key occurs elsewhere in the component too, which is too rare to be worth optimizing
+      component = component.replace(resourceKeyPrefix, "");
+      fileKeyStart = 0;
+    } else {
+      fileKeyStart = component.startsWith(resourceKeyPrefix) ? resourceKeyPrefix.length() : 0;
+    }
+    final int length = component.length();
+    final Set<String> files = new LinkedHashSet<>();
+    // matches by full path
+    addFilesEndingWith(reversed(component, fileKeyStart, length, length, false, ""), files);
+    // matches files in root dir, like [root]/VeryBadClassRoot.groovy: the normalized file key is the file key from its
+    // start to head end and from tail start on, without the part from the first [ to the last ]
+    final int lastBracket = component.lastIndexOf(']');
+    final int firstBracket = lastBracket - fileKeyStart >= 2 ? component.indexOf('[', fileKeyStart) : -1;
+    final boolean inRootDir = firstBracket >= 0 && firstBracket < lastBracket - 1;
+    final int headEnd = inRootDir ? firstBracket : length;
+    final int tailStart = inRootDir ? lastBracket + 1 : length;
+    if (inRootDir) {
+      addFilesEndingWith(reversed(component, fileKeyStart, headEnd, tailStart, false, ""), files);
+    }
+    // matches classes without .java suffix, like .OtherClass
+    addFilesEndingWith(reversed(component, fileKeyStart, headEnd, tailStart, true, JAVA_EXTENSION), files);
+    return files;
+  }
+
+  /**
+   * @return the start of the key after the last colon which is neither the first nor the last character, like the
+   * regular expression (.+:)(.+) does
+   */
+  private static int startOfKeyAfterLastColon(String component) {
+    final int lastColon = component.lastIndexOf(':', component.length() - 2);
+    return lastColon >= 1 ? lastColon + 1 : 0;
+  }
+
+  private void addFilesEndingWith(String reversedSuffix, Set<String> files) {
+    files.addAll(
+        filePathsByReversedPath.subMap(reversedSuffix, true, reversedSuffix + Character.MAX_VALUE, false).values()
+    );
+  }
+
+  /**
+   * @return the reversed component from head start to head end, followed by the component from tail start on and the
+   * extension
+   */
+  private static String reversed(
+      String component,
+      int headStart,
+      int headEnd,
+      int tailStart,
+      boolean dotsAsSlashes,
+      String extension
+  ) {
+    final char[] chars = new char[extension.length() + component.length() - tailStart + headEnd - headStart];
+    int index = 0;
+    for (int i = extension.length() - 1; i >= 0; i--) {
+      chars[index++] = extension.charAt(i);
+    }
+    for (int i = component.length() - 1; i >= tailStart; i--) {
+      chars[index++] = dotsAsSlashes ? dotAsSlash(component.charAt(i)) : component.charAt(i);
+    }
+    for (int i = headEnd - 1; i >= headStart; i--) {
+      chars[index++] = dotsAsSlashes ? dotAsSlash(component.charAt(i)) : component.charAt(i);
+    }
+    return new String(chars);
+  }
+
+  private static char dotAsSlash(char c) {
+    return c == '.' ? '/' : c;
+  }
+}
@@ -0,0 +1,127 @@
+package org.intellij.sonar.index;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import org.junit.Test;
+
+public class FileIssuesTest {
+
+  private static final SonarIssue FILE_LEVEL = new SonarIssue("file", "java:S1220", null, "Move it", "MINOR", null);
+  private static final SonarIssue OTHER_FILE_LEVEL = new SonarIssue("other", "S00", null, "Split it", "INFO", true);
+  private static final SonarIssue LINE_1 = new SonarIssue("a", "java:S100", 1, "Rename it", "MAJOR", false);
+  private static final SonarIssue LINE_2 = new SonarIssue(
+      "b", "java:S106", 2, "Log it", "MAJOR", true, new IssueTextRange(2, 4, 3, 1)
+  );
+  private static final SonarIssue OTHER_LINE_2 = new SonarIssue("c", "java:S100", 2, "Rename it", "MAJOR", false);
+  private static final SonarIssue LINE_3 = new SonarIssue("d", "java:S1186", 3, "Comment it", "CRITICAL", null);
+  private static final SonarIssue LINE_5 = new SonarIssue("e", "java:S100", 5, "Rename it", "MAJOR", false);
+
+  private static final FileIssues ISSUES = FileIssues.of(Arrays.asList(
+      LINE_5, LINE_2, FILE_LEVEL, LINE_1, OTHER_LINE_2, OTHER_FILE_LEVEL, LINE_3
+  ));
+
+  @Test
+  public void ordersTheIssuesByLineWithFileLevelIssuesFirst() {
+    assertThat(new ArrayList<>(ISSUES)).isEqualTo(Arrays.asList(
+        FILE_LEVEL, OTHER_FILE_LEVEL, LINE_1, LINE_2, OTHER_LINE_2, LINE_3, LINE_5
+    ));
+  }
+
+  @Test
+  public void keepsTheValuesOfTheIssues() {
+    final List<String> values = ISSUES.stream().map(FileIssuesTest::values).collect(Collectors.toList());
+
+    assertThat(values).isEqualTo(Arrays.asList(
+        values(FILE_LEVEL),
+        values(OTHER_FILE_LEVEL),
+        values(LINE_1),
+        values(LINE_2),
+        values(OTHER_LINE_2),
+        values(LINE_3),
+        values(LINE_5)
+    ));
+  }
+
+  @Test
+  public void findsTheIssuesOnLinesIncludingBothBounds() {
+    assertThat(ISSUES.onLines(2, 3)).isEqualTo(Arrays.asList(LINE_2, OTHER_LINE_2, LINE_3));
+    assertThat(ISSUES.onLine(2)).isEqualTo(Arrays.asList(LINE_2, OTHER_LINE_2));
+    assertThat(ISSUES.onLines(3, 5)).isEqualTo(Arrays.asList(LINE_3, LINE_5));
+  }
+
+  @Test
+  public void findsNoIssuesOnLinesWithoutIssues() {
+    assertThat(ISSUES.onLine(4)).isEmpty();
+    assertThat(ISSUES.onLines(6, 10)).isEmpty();
+    assertThat(ISSUES.onLines(3, 2)).isEmpty();
+    assertThat(FileIssues.EMPTY.onLines(1, Integer.MAX_VALUE)).isEmpty();
+  }
+
+  @Test
+  public void findsNoFileLevelIssuesOnLines() {
+    assertThat(ISSUES.onLines(Integer.MIN_VALUE, Integer.MAX_VALUE))
+        .isEqualTo(Arrays.asList(LINE_1, LINE_2, OTHER_LINE_2, LINE_3, LINE_5));
+    assertThat(ISSUES.onLine(0)).isEmpty();
+  }
+
+  @Test
+  public void findsIssuesByKey() {
+    assertThat(ISSUES.findByKey("b")).isEqualTo(Optional.of(LINE_2));
+    assertThat(ISSUES.findByKey("b").get().getTextRange()).isEqualTo(LINE_2.getTextRange());
+    assertThat(ISSUES.findByKey("file")).isEqualTo(Optional.of(FILE_LEVEL));
+    assertThat(ISSUES.findByKey("missing")).isEqualTo(Optional.empty());
+    assertThat(ISSUES.findByKey(null)).isEqualTo(Optional.empty());
+  }
+
+  @Test
+  public void findsEachOfManyIssuesByKey() {
+    final List<SonarIssue> issues = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      issues.add(new SonarIssue("AX" + i, "java:S100", i % 50, "Rename it", "MAJOR", false));
+    }
+    final FileIssues fileIssues = FileIssues.of(issues);
+
+    for (SonarIssue issue : issues) {
+      assertThat(fileIssues.findByKey(issue.getKey())).isEqualTo(Optional.of(issue));
+      assertThat(fileIssues.contains(issue)).isTrue();
+    }
+    assertThat(fileIssues.findByKey("AX1000")).isEqualTo(Optional.empty());
+  }
+
+  @Test
+  public void containsKeylessIssuesWithTheSameValues() {
+    final FileIssues issues = FileIssues.of(Arrays.asList(
+        new SonarIssue(null, "java:S100", 3, "Rename it", "MAJOR", true),
+        new SonarIssue(null, "java:S100", null, "Rename it", "MAJOR", null)
+    ));
+
+    assertThat(issues.contains(new SonarIssue(null, "java:S100", 3, "Rename it", "MAJOR", true))).isTrue();
+    assertThat(issues.contains(new SonarIssue(null, "java:S100", null, "Rename it", "MAJOR", null))).isTrue();
+    assertThat(issues.contains(new SonarIssue(null, "java:S100", 4, "Rename it", "MAJOR", true))).isFalse();
+    assertThat(issues.contains(new SonarIssue(null, "java:S100", 3, "Rename it", "MAJOR", false))).isFalse();
+    assertThat(issues.contains(new SonarIssue(null, "java:S100", 3, "Rename it", "MINOR", true))).isFalse();
+    assertThat(issues.contains(new SonarIssue(null, "java:S106", 3, "Rename it", "MAJOR", true))).isFalse();
+    assertThat(issues.contains(new SonarIssue(null, "java:S100", 3, "Rename", "MAJOR", true))).isFalse();
+    assertThat(issues.contains(new SonarIssue("key", "java:S100", 3, "Rename it", "MAJOR", true))).isFalse();
+    assertThat(issues.contains("java:S100")).isFalse();
+  }
+
+  @Test
+  public void keepsDistinctIssuesOnly() {
+    final FileIssues issues = FileIssues.of(Arrays.asList(LINE_1, LINE_2, LINE_1));
+
+    assertThat(issues.size()).isEqualTo(2);
+    assertThat(FileIssues.of(Collections.emptyList())).isSameAs(FileIssues.EMPTY);
+    assertThat(FileIssues.of(issues)).isSameAs(issues);
+  }
+
+  private static String values(SonarIssue issue) {
+    return issue + " " + issue.getMessage();
+  }
+}
@@ -0,0 +1,249 @@
+package org.intellij.sonar.persistence;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.intellij.sonar.index.FileIssues;
+import org.intellij.sonar.index.IssueTextRange;
+import org.intellij.sonar.index.SonarIssue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class IssuesIndexStorageTest {
+
+  private static final String CLAZZ = "/project/src/Clazz.java";
+  private static final String OTHER_CLASS = "/project/src/OtherClass.java";
+  private static final String NEW_CLASS = "/project/src/NewClass.java";
+
+  private static final Set<SonarIssue> CLAZZ_ISSUES = issues(
+      new SonarIssue("key1", "java:S100", 3, "Rename this method", "MAJOR", false, new IssueTextRange(3, 7, 3, 12)),
+      new SonarIssue("key2", "java:S1220", null, "Move this file to a named package", "MINOR", null)
+  );
+  private static final Set<SonarIssue> OTHER_CLASS_ISSUES = issues(
+      new SonarIssue("key3", "java:S106", 12, "Replace this use of System.out", "MAJOR", true)
+  );
+  private static final Set<SonarIssue> NEW_CLASS_ISSUES = issues(
+      new SonarIssue("key4", "java:S1186", 5, "Add a nested comment", "CRITICAL", true, new IssueTextRange(5, 2, 7, 3))
+  );
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = temporaryFolder.newFolder().toPath();
+  }
+
+  @Test
+  public void loadsNothingFromAnEmptyDirectory() {
+    assertThat(new IssuesIndexStorage(directory).load().isPresent()).isFalse();
+  }
+
+  @Test
+  public void reloadsTheWrittenIndex() {
+    final ChangeTrackingIndex index = writeInitialIndex();
+
+    assertThat(load()).isEqualTo(new HashMap<>(index));
+    assertThat(listFiles()).containsOnly("issues.1.snapshot");
+  }
+
+  @Test
+  public void reloadsTheChangesAppendedToTheJournal() {
+    final IssuesIndexStorage storage = new IssuesIndexStorage(directory);
+    final ChangeTrackingIndex index = writeInitialIndex(storage);
+
+    index.update(changes -> {
+      changes.put(NEW_CLASS, NEW_CLASS_ISSUES);
+      changes.remove(OTHER_CLASS);
+    });
+    assertThat(storage.write(index, index.takeChangedPaths())).isTrue();
+
+    assertThat(listFiles()).containsOnly("issues.1.snapshot", "issues.1.journal");
+    assertThat(load()).isEqualTo(ImmutableMap.of(CLAZZ, CLAZZ_ISSUES, NEW_CLASS, NEW_CLASS_ISSUES));
+  }
+
+  @Test
+  public void appliesLaterJournalEntriesOfAFileOverEarlierOnes() {
+    final IssuesIndexStorage storage = new IssuesIndexStorage(directory);
+    final ChangeTrackingIndex index = writeInitialIndex(storage);
+
+    index.update(changes -> changes.remove(CLAZZ));
+    storage.write(index, index.takeChangedPaths());
+    index.update(changes -> changes.put(CLAZZ, NEW_CLASS_ISSUES));
+    storage.write(index, index.takeChangedPaths());
+
+    assertThat(load()).isEqualTo(ImmutableMap.of(CLAZZ, NEW_CLASS_ISSUES, OTHER_CLASS, OTHER_CLASS_ISSUES));
+  }
+
+  @Test
+  public void foldsALargeJournalIntoTheNextGeneration() {
+    final IssuesIndexStorage storage = new IssuesIndexStorage(directory);
+    final ChangeTrackingIndex index = writeInitialIndex(storage);
+    final Set<SonarIssue> manyIssues = manyIssues();
+
+    // each write appends all issues of the file again, until the journal outgrows the minimum size to compact
+    for (int i = 0; listFiles().contains("issues.1.snapshot"); i++) {
+      final int version = i;
+      index.update(changes -> changes.put(NEW_CLASS, version % 2 == 0 ? manyIssues : NEW_CLASS_ISSUES));
+      assertThat(storage.write(index, index.takeChangedPaths())).isTrue();
+    }
+
+    assertThat(listFiles()).containsOnly("issues.2.snapshot");
+    // the index is rebased onto the new snapshot without changing its issues
+    assertThat(index.get(CLAZZ)).isEqualTo(CLAZZ_ISSUES);
+    assertThat(load()).isEqualTo(new HashMap<>(index));
+
+    index.update(changes -> changes.remove(CLAZZ));
+    storage.write(index, index.takeChangedPaths());
+
+    assertThat(listFiles()).containsOnly("issues.2.snapshot", "issues.2.journal");
+    assertThat(load()).isEqualTo(new HashMap<>(index));
+  }
+
+  @Test
+  public void continuesTheLoadedGeneration() {
+    writeInitialIndex();
+    final IssuesIndexStorage storage = new IssuesIndexStorage(directory);
+    final ChangeTrackingIndex index = storage.load().get();
+
+    index.update(changes -> changes.put(NEW_CLASS, NEW_CLASS_ISSUES));
+    storage.write(index, index.takeChangedPaths());
+
+    assertThat(listFiles()).containsOnly("issues.1.snapshot", "issues.1.journal");
+    assertThat(load()).isEqualTo(
+        ImmutableMap.of(CLAZZ, CLAZZ_ISSUES, OTHER_CLASS, OTHER_CLASS_ISSUES, NEW_CLASS, NEW_CLASS_ISSUES)
+    );
+  }
+
+  @Test
+  public void keepsTheJournalEntriesBeforeATruncatedTail() throws IOException {
+    writeJournalWithTwoEntries();
+    final Path journal = directory.resolve("issues.1.journal");
+    final long journalSize = Files.size(journal);
+    try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE)) {
+      channel.truncate(journalSize - 3);
+    }
+
+    assertThat(load()).isEqualTo(
+        ImmutableMap.of(CLAZZ, CLAZZ_ISSUES, OTHER_CLASS, OTHER_CLASS_ISSUES, NEW_CLASS, NEW_CLASS_ISSUES)
+    );
+    // the journal is rewritten without the incomplete entry, so later entries are appended to a readable journal
+    assertThat(Files.size(journal) < journalSize - 3).isTrue();
+  }
+
+  @Test
+  public void keepsTheJournalEntriesBeforeAnEntryWithBadChecksum() throws IOException {
+    writeJournalWithTwoEntries();
+    final Path journal = directory.resolve("issues.1.journal");
+    flipByte(journal, Files.size(journal) - 1);
+
+    assertThat(load()).isEqualTo(
+        ImmutableMap.of(CLAZZ, CLAZZ_ISSUES, OTHER_CLASS, OTHER_CLASS_ISSUES, NEW_CLASS, NEW_CLASS_ISSUES)
+    );
+  }
+
+  @Test
+  public void ignoresAJournalOfAnotherFormatVersion() throws IOException {
+    writeJournalWithTwoEntries();
+    flipByte(directory.resolve("issues.1.journal"), IssuesIndexStorage.HEADER_SIZE - 1);
+
+    assertThat(load()).isEqualTo(ImmutableMap.of(CLAZZ, CLAZZ_ISSUES, OTHER_CLASS, OTHER_CLASS_ISSUES));
+  }
+
+  @Test
+  public void dropsASnapshotWithBadFooter() throws IOException {
+    writeInitialIndex();
+    final Path snapshot = directory.resolve("issues.1.snapshot");
+    flipByte(snapshot, Files.size(snapshot) - 1);
+
+    assertThat(new IssuesIndexStorage(directory).load().isPresent()).isFalse();
+    assertThat(listFiles()).isEmpty();
+  }
+
+  @Test
+  public void ignoresTheTemporaryFilesOfInterruptedWrites() throws IOException {
+    writeInitialIndex();
+    Files.write(directory.resolve("issues.2.snapshot.tmp"), new byte[]{1, 2, 3});
+
+    assertThat(load()).isEqualTo(ImmutableMap.of(CLAZZ, CLAZZ_ISSUES, OTHER_CLASS, OTHER_CLASS_ISSUES));
+  }
+
+  private ChangeTrackingIndex writeInitialIndex() {
+    return writeInitialIndex(new IssuesIndexStorage(directory));
+  }
+
+  private static ChangeTrackingIndex writeInitialIndex(IssuesIndexStorage storage) {
+    final ChangeTrackingIndex index = new ChangeTrackingIndex(Collections.emptyMap());
+    index.update(changes -> {
+      changes.put(CLAZZ, CLAZZ_ISSUES);
+      changes.put(OTHER_CLASS, OTHER_CLASS_ISSUES);
+    });
+    assertThat(storage.write(index, index.takeChangedPaths())).isTrue();
+    return index;
+  }
+
+  /**
+   * writes the initial index, then a journal which adds the new class and removes the other class in two entries
+   */
+  private void writeJournalWithTwoEntries() {
+    final IssuesIndexStorage storage = new IssuesIndexStorage(directory);
+    final ChangeTrackingIndex index = writeInitialIndex(storage);
+    index.update(changes -> changes.put(NEW_CLASS, NEW_CLASS_ISSUES));
+    storage.write(index, index.takeChangedPaths());
+    index.update(changes -> changes.remove(OTHER_CLASS));
+    storage.write(index, index.takeChangedPaths());
+    assertThat(load()).isEqualTo(ImmutableMap.of(CLAZZ, CLAZZ_ISSUES, NEW_CLASS, NEW_CLASS_ISSUES));
+  }
+
+  private Map<String, Set<SonarIssue>> load() {
+    final Optional<ChangeTrackingIndex> index = new IssuesIndexStorage(directory).load();
+    assertThat(index.isPresent()).isTrue();
+    return new HashMap<>(index.get());
+  }
+
+  private List<String> listFiles() {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.map(file -> file.getFileName().toString()).collect(Collectors.toList());
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  static void flipByte(Path file, long position) throws IOException {
+    final byte[] bytes = Files.readAllBytes(file);
+    bytes[(int) position] ^= 0xff;
+    Files.write(file, bytes);
+  }
+
+  private static Set<SonarIssue> manyIssues() {
+    final String message = String.join("", Collections.nCopies(1000, "x"));
+    final Set<SonarIssue> issues = new LinkedHashSet<>();
+    for (int i = 0; i < 600; i++) {
+      issues.add(new SonarIssue("many" + i, "java:S100", i + 1, message, "MAJOR", false));
+    }
+    return FileIssues.of(issues);
+  }
+
+  private static Set<SonarIssue> issues(SonarIssue... issues) {
+    return FileIssues.of(new LinkedHashSet<>(Arrays.asList(issues)));
+  }
+}
@@ -0,0 +1,174 @@
+package org.intellij.sonar.persistence;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.intellij.sonar.persistence.IssuesIndexStorageTest.flipByte;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+import org.intellij.sonar.index.FileIssues;
+import org.intellij.sonar.index.IssueTextRange;
+import org.intellij.sonar.index.SonarIssue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedIssuesSnapshotTest {
+
+  private static final String CLAZZ = "/project/src/Clazz.java";
+  private static final String UMLAUT_CLASS = "/project/src/\u00c4rger.java";
+  private static final String ZEBRA_CLASS = "/project/src/Zebra.java";
+
+  private static final Set<SonarIssue> CLAZZ_ISSUES = issues(
+      new SonarIssue("key1", "java:S100", 3, "Rename this method", "MAJOR", false, new IssueTextRange(3, 7, 3, 12)),
+      new SonarIssue("key2", "java:S1220", null, "Move this file to a named package", "MINOR", null)
+  );
+  private static final Set<SonarIssue> UMLAUT_CLASS_ISSUES = issues(
+      new SonarIssue("key3", "java:S106", 12, "Replace this use of System.out", "MAJOR", true)
+  );
+  private static final Set<SonarIssue> ZEBRA_CLASS_ISSUES = issues();
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path snapshot;
+
+  @Before
+  public void setUp() throws IOException {
+    final Path directory = temporaryFolder.newFolder().toPath();
+    final IssuesIndexStorage storage = new IssuesIndexStorage(directory);
+    final ChangeTrackingIndex index = new ChangeTrackingIndex(Collections.emptyMap());
+    index.update(changes -> changes.putAll(ImmutableMap.of(
+        CLAZZ, CLAZZ_ISSUES,
+        UMLAUT_CLASS, UMLAUT_CLASS_ISSUES,
+        ZEBRA_CLASS, ZEBRA_CLASS_ISSUES
+    )));
+    assertThat(storage.write(index, index.takeChangedPaths())).isTrue();
+    snapshot = directory.resolve("issues.1.snapshot");
+  }
+
+  @Test
+  public void decodesTheIssuesOfAFile() throws IOException {
+    final MappedIssuesSnapshot mappedSnapshot = MappedIssuesSnapshot.map(snapshot).get();
+
+    assertThat(mappedSnapshot.size()).isEqualTo(3);
+    assertThat(mappedSnapshot.get(CLAZZ)).isEqualTo(CLAZZ_ISSUES);
+    assertThat(mappedSnapshot.get(UMLAUT_CLASS)).isEqualTo(UMLAUT_CLASS_ISSUES);
+    assertThat(mappedSnapshot.get(ZEBRA_CLASS)).isEqualTo(ZEBRA_CLASS_ISSUES);
+    assertThat(mappedSnapshot.get("/project/src/Missing.java")).isNull();
+    assertThat(mappedSnapshot.contains(ZEBRA_CLASS)).isTrue();
+    assertThat(mappedSnapshot.contains("/project/src/Zebra")).isFalse();
+  }
+
+  @Test
+  public void listsThePathsInTheOrderOfTheirUtf8Bytes() throws IOException {
+    final MappedIssuesSnapshot mappedSnapshot = MappedIssuesSnapshot.map(snapshot).get();
+
+    assertThat(Lists.newArrayList(mappedSnapshot.paths())).isEqualTo(Arrays.asList(CLAZZ, ZEBRA_CLASS, UMLAUT_CLASS));
+  }
+
+  @Test
+  public void mapsNoSnapshotOfAnotherFormatVersion() throws IOException {
+    flipByte(snapshot, IssuesIndexStorage.HEADER_SIZE - 1);
+
+    assertThat(MappedIssuesSnapshot.map(snapshot).isPresent()).isFalse();
+  }
+
+  @Test
+  public void mapsNoSnapshotShorterThanHeaderAndFooter() throws IOException {
+    Files.write(snapshot, Arrays.copyOf(Files.readAllBytes(snapshot), IssuesIndexStorage.HEADER_SIZE + 3));
+
+    assertThat(MappedIssuesSnapshot.map(snapshot).isPresent()).isFalse();
+  }
+
+  @Test
+  public void mapsNoTruncatedSnapshot() throws IOException {
+    final byte[] bytes = Files.readAllBytes(snapshot);
+    Files.write(snapshot, Arrays.copyOf(bytes, bytes.length - 1));
+
+    assertThat(MappedIssuesSnapshot.map(snapshot).isPresent()).isFalse();
+  }
+
+  @Test
+  public void mapsNoSnapshotWithDirectoryOffsetOutsideTheFile() throws IOException {
+    final ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(snapshot));
+    bytes.putLong(bytes.capacity() - Long.BYTES, Integer.MAX_VALUE + 1L);
+    Files.write(snapshot, bytes.array());
+
+    assertThat(MappedIssuesSnapshot.map(snapshot).isPresent()).isFalse();
+  }
+
+  @Test
+  public void mapsNoSnapshotWithEntriesCountBeyondTheDirectory() throws IOException {
+    final ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(snapshot));
+    bytes.putInt(bytes.capacity() - MappedIssuesSnapshot.FOOTER_SIZE, 4);
+    Files.write(snapshot, bytes.array());
+
+    assertThat(MappedIssuesSnapshot.map(snapshot).isPresent()).isFalse();
+  }
+
+  @Test
+  public void mapsNoSnapshotWithEntryOffsetOutsideTheEntries() throws IOException {
+    final ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(snapshot));
+    final int directoryOffset = (int) bytes.getLong(bytes.capacity() - Long.BYTES);
+    bytes.putInt(directoryOffset, directoryOffset);
+    Files.write(snapshot, bytes.array());
+
+    assertThat(MappedIssuesSnapshot.map(snapshot).isPresent()).isFalse();
+  }
+
+  @Test
+  public void mapsNoSnapshotWithEntryLongerThanTheEntries() throws IOException {
+    final ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(snapshot));
+    bytes.putInt(IssuesIndexStorage.HEADER_SIZE, Integer.MAX_VALUE);
+    Files.write(snapshot, bytes.array());
+
+    assertThat(MappedIssuesSnapshot.map(snapshot).isPresent()).isFalse();
+  }
+
+  @Test
+  public void skipsAnEntryWithBadChecksum() throws IOException {
+    // the first entry is the one of the first path, its checksum follows its length and contents
+    final int length = ByteBuffer.wrap(Files.readAllBytes(snapshot)).getInt(IssuesIndexStorage.HEADER_SIZE);
+    flipByte(snapshot, IssuesIndexStorage.HEADER_SIZE + Integer.BYTES + length + Long.BYTES - 1);
+
+    final MappedIssuesSnapshot mappedSnapshot = MappedIssuesSnapshot.map(snapshot).get();
+
+    assertThat(mappedSnapshot.get(CLAZZ)).isNull();
+    assertThat(mappedSnapshot.contains(CLAZZ)).isTrue();
+    assertThat(mappedSnapshot.get(UMLAUT_CLASS)).isEqualTo(UMLAUT_CLASS_ISSUES);
+  }
+
+  @Test
+  public void skipsAnEntryWhoseContentsDoNotMatchItsCounts() throws IOException {
+    final ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(snapshot));
+    final int entryOffset = IssuesIndexStorage.HEADER_SIZE;
+    final int length = bytes.getInt(entryOffset);
+    final int pathLength = bytes.getInt(entryOffset + Integer.BYTES);
+    // more issues than the entry holds, under a checksum matching the changed contents
+    bytes.putInt(entryOffset + 2 * Integer.BYTES + pathLength, 1000);
+    final ByteBuffer contents = ByteBuffer.wrap(bytes.array(), entryOffset + Integer.BYTES, length);
+    final CRC32 checksum = new CRC32();
+    checksum.update(contents);
+    bytes.putLong(entryOffset + Integer.BYTES + length, checksum.getValue());
+    Files.write(snapshot, bytes.array());
+
+    final MappedIssuesSnapshot mappedSnapshot = MappedIssuesSnapshot.map(snapshot).get();
+
+    assertThat(mappedSnapshot.get(CLAZZ)).isNull();
+    assertThat(mappedSnapshot.get(ZEBRA_CLASS)).isEqualTo(ZEBRA_CLASS_ISSUES);
+  }
+
+  private static Set<SonarIssue> issues(SonarIssue... issues) {
+    return FileIssues.of(new LinkedHashSet<>(Arrays.asList(issues)));
+  }
+}
@@ -0,0 +1,232 @@
+package org.intellij.sonar.sonarserver;
+
+import static java.util.Collections.singletonList;
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.Test;
+import org.sonarqube.ws.Common;
+import org.sonarqube.ws.Issues.SearchWsResponse;
+import org.sonarqube.ws.client.issue.IssuesService;
+import org.sonarqube.ws.client.issue.SearchWsRequest;
+
+public class IssuesDownloadPlannerTest {
+
+  private static final int DOWNLOAD_LIMIT = 8;
+
+  @Test
+  public void keepsAQueryUnderTheDownloadLimitInOneShard() {
+    final FakeIssuesService issuesService = new FakeIssuesService(request -> response(3));
+
+    final List<IssuesDownloadPlanner.Shard> shards = plan(issuesService);
+
+    assertThat(shards.size()).isEqualTo(1);
+    assertThat(shards.get(0).getTotal()).isEqualTo(3);
+    assertThat(shards.get(0).isTruncated()).isFalse();
+    assertThat(issuesService.requests.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void splitsByTheSeveritiesCoveringAllIssues() {
+    final FakeIssuesService issuesService = new FakeIssuesService(request -> request.getSeverities() == null
+        ? response(10, facet("severities", "MAJOR", 6, "MINOR", 4, "INFO", 0))
+        : response("MAJOR".equals(request.getSeverities().get(0)) ? 6 : 4));
+
+    final List<IssuesDownloadPlanner.Shard> shards = plan(issuesService);
+
+    assertThat(totals(shards)).isEqualTo(Arrays.asList(6, 4));
+    assertThat(requestedSeverities(issuesService)).isEqualTo(Arrays.asList(null, "MAJOR", "MINOR"));
+  }
+
+  @Test
+  public void skipsFacetsNotCoveringAllIssues() {
+    final FakeIssuesService issuesService = new FakeIssuesService(request -> request.getTypes() == null
+        ? response(10, facet("severities", "MAJOR", 6, "MINOR", 3), facet("types", "BUG", 5, "CODE_SMELL", 5))
+        : response(5));
+
+    final List<IssuesDownloadPlanner.Shard> shards = plan(issuesService);
+
+    assertThat(totals(shards)).isEqualTo(Arrays.asList(5, 5));
+    assertThat(requestedSeverities(issuesService)).isEqualTo(Arrays.asList(null, null, null));
+    assertThat(requestedTypes(issuesService)).isEqualTo(Arrays.asList(null, "BUG", "CODE_SMELL"));
+  }
+
+  @Test
+  public void splitsOnlyByTheValuesAllowedByTheQuery() {
+    final FakeIssuesService issuesService = new FakeIssuesService(request -> request.getSeverities().size() > 1
+        ? response(10, facet("severities", "BLOCKER", 3, "MAJOR", 6, "MINOR", 4))
+        : response("MAJOR".equals(request.getSeverities().get(0)) ? 6 : 4));
+    final IssuesDownloadPlanner planner = new IssuesDownloadPlanner(
+        issuesService,
+        () -> new SearchWsRequest().setSeverities(Arrays.asList("MAJOR", "MINOR")),
+        DOWNLOAD_LIMIT
+    );
+
+    final List<IssuesDownloadPlanner.Shard> shards = planner.plan();
+
+    assertThat(totals(shards)).isEqualTo(Arrays.asList(6, 4));
+    assertThat(requestedSeverities(issuesService)).isEqualTo(Arrays.asList("MAJOR", "MAJOR", "MINOR"));
+  }
+
+  @Test
+  public void truncatesAShardWhichCannotBeSplit() {
+    final FakeIssuesService issuesService = new FakeIssuesService(request -> response(
+        10,
+        facet("severities", "MAJOR", 10),
+        facet("types", "BUG", 10),
+        facet("directories", "src", 10),
+        facet("createdAt", "2020-01-01T00:00:00+0000", 10, "2020-02-01T00:00:00+0000", 0)
+    ));
+
+    final List<IssuesDownloadPlanner.Shard> shards = plan(issuesService);
+
+    assertThat(shards.size()).isEqualTo(1);
+    assertThat(shards.get(0).getTotal()).isEqualTo(10);
+    assertThat(shards.get(0).isTruncated()).isTrue();
+    // only as many issues as the server returns are paged through
+    assertThat(shards.get(0).getPages(3, DOWNLOAD_LIMIT)).isEqualTo(3);
+  }
+
+  @Test
+  public void splitsByCreationDateUpToTheMaximumDepth() {
+    // the first period keeps the start of the split one, so it never gets under the limit
+    final FakeIssuesService issuesService = new FakeIssuesService(request -> request.getCreatedAfter() == null
+        ? response(10, facet("createdAt", "2020-01-01T00:00:00+0000", 9, "2020-02-01T00:00:00+0000", 1))
+        : response(1));
+
+    final List<IssuesDownloadPlanner.Shard> shards = plan(issuesService);
+
+    assertThat(shards.size()).isEqualTo(17);
+    assertThat(shards.stream().filter(IssuesDownloadPlanner.Shard::isTruncated).count()).isEqualTo(1L);
+    assertThat(shards.get(0).isTruncated()).isTrue();
+    assertThat(issuesService.requests.size()).isEqualTo(33);
+  }
+
+  @Test
+  public void keepsTheCreationPeriodOfTheSplitShardAtTheEdges() {
+    final FakeIssuesService issuesService = new FakeIssuesService(request -> request.getCreatedAfter() == null
+        && request.getCreatedBefore() == null
+        ? response(10, facet(
+            "createdAt",
+            "2020-03-01T00:00:00+0000", 4,
+            "2020-01-01T00:00:00+0000", 6,
+            "2020-02-01T00:00:00+0000", 0
+        ))
+        : response(5));
+
+    final List<IssuesDownloadPlanner.Shard> shards = plan(issuesService);
+
+    assertThat(totals(shards)).isEqualTo(Arrays.asList(5, 5));
+    final List<SearchWsRequest> requests = issuesService.requests;
+    assertThat(requests.get(1).getCreatedAfter()).isNull();
+    assertThat(requests.get(1).getCreatedBefore()).isEqualTo("2020-02-01T00:00:00+0000");
+    assertThat(requests.get(2).getCreatedAfter()).isEqualTo("2020-03-01T00:00:00+0000");
+    assertThat(requests.get(2).getCreatedBefore()).isNull();
+  }
+
+  @Test
+  public void batchesTheComponentKeys() {
+    final FakeIssuesService issuesService = new FakeIssuesService(request -> response(1));
+    final List<String> componentKeys = IntStream.range(0, 85)
+        .mapToObj(i -> "sonar:project:src/Clazz" + i + ".java")
+        .collect(Collectors.toList());
+    final IssuesDownloadPlanner planner = new IssuesDownloadPlanner(
+        issuesService,
+        () -> new SearchWsRequest().setComponentRoots(singletonList("sonar:project")),
+        DOWNLOAD_LIMIT
+    );
+
+    final List<IssuesDownloadPlanner.Shard> shards = planner.plan(componentKeys);
+
+    assertThat(shards.size()).isEqualTo(3);
+    final List<List<String>> requestedKeys = issuesService.requests.stream()
+        .map(SearchWsRequest::getComponentKeys)
+        .collect(Collectors.toList());
+    assertThat(requestedKeys).isEqualTo(Arrays.asList(
+        componentKeys.subList(0, 40),
+        componentKeys.subList(40, 80),
+        componentKeys.subList(80, 85)
+    ));
+    assertThat(issuesService.requests.get(0).getComponentRoots()).isNull();
+  }
+
+  @Test
+  public void plansTheWholeQueryWithoutComponentKeys() {
+    final FakeIssuesService issuesService = new FakeIssuesService(request -> response(1));
+
+    final List<IssuesDownloadPlanner.Shard> shards = new IssuesDownloadPlanner(
+        issuesService,
+        SearchWsRequest::new,
+        DOWNLOAD_LIMIT
+    ).plan(Collections.emptyList());
+
+    assertThat(shards.size()).isEqualTo(1);
+    assertThat(issuesService.requests.get(0).getComponentKeys()).isNull();
+  }
+
+  private static List<IssuesDownloadPlanner.Shard> plan(IssuesService issuesService) {
+    return new IssuesDownloadPlanner(issuesService, SearchWsRequest::new, DOWNLOAD_LIMIT).plan();
+  }
+
+  private static List<Integer> totals(List<IssuesDownloadPlanner.Shard> shards) {
+    return shards.stream().map(IssuesDownloadPlanner.Shard::getTotal).collect(Collectors.toList());
+  }
+
+  private static List<String> requestedSeverities(FakeIssuesService issuesService) {
+    return issuesService.requests.stream()
+        .map(request -> request.getSeverities() == null ? null : request.getSeverities().get(0))
+        .collect(Collectors.toList());
+  }
+
+  private static List<String> requestedTypes(FakeIssuesService issuesService) {
+    return issuesService.requests.stream()
+        .map(request -> request.getTypes() == null ? null : request.getTypes().get(0))
+        .collect(Collectors.toList());
+  }
+
+  private static SearchWsResponse response(int total, Common.Facet... facets) {
+    return SearchWsResponse.newBuilder()
+        .setPaging(Common.Paging.newBuilder().setTotal(total))
+        .setFacets(Common.Facets.newBuilder().addAllFacets(Arrays.asList(facets)))
+        .build();
+  }
+
+  /**
+   * @param valuesAndCounts the values of the facet, each followed by its number of issues
+   */
+  private static Common.Facet facet(String property, Object... valuesAndCounts) {
+    final Common.Facet.Builder facet = Common.Facet.newBuilder().setProperty(property);
+    for (int i = 0; i < valuesAndCounts.length; i += 2) {
+      facet.addValues(Common.FacetValue.newBuilder()
+          .setVal((String) valuesAndCounts[i])
+          .setCount((Integer) valuesAndCounts[i + 1]));
+    }
+    return facet.build();
+  }
+
+  /**
+   * answers the searches of the planner, remembering the requests
+   */
+  private static class FakeIssuesService extends IssuesService {
+
+    private final Function<SearchWsRequest, SearchWsResponse> responses;
+    private final List<SearchWsRequest> requests = new ArrayList<>();
+
+    FakeIssuesService(Function<SearchWsRequest, SearchWsResponse> responses) {
+      super(null);
+      this.responses = responses;
+    }
+
+    @Override
+    public SearchWsResponse search(SearchWsRequest request) {
+      requests.add(request);
+      return responses.apply(request);
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package org.intellij.sonar.util;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.Test;
+
+public class SonarComponentKeysTest {
+
+  @Test
+  public void takesThePrefixesBeforeTheCommonEnd() {
+    assertThat(SonarComponentKeys.prefixesOf("sonar:project:src/Clazz.java", "/project/src/Clazz.java"))
+        .isEqualTo(Optional.of(Maps.immutableEntry("/project/", "sonar:project:")));
+  }
+
+  @Test
+  public void takesTheModuleIntoTheKeyPrefix() {
+    assertThat(SonarComponentKeys.prefixesOf("sonar:project:module:src/Clazz.java", "/project/module/src/Clazz.java"))
+        .isEqualTo(Optional.of(Maps.immutableEntry("/project/module/", "sonar:project:module:")));
+  }
+
+  @Test
+  public void startsTheCommonEndAtAFileOrDirectoryName() {
+    assertThat(SonarComponentKeys.prefixesOf("sonar:project:Clazz.java", "/project/OtherClazz.java"))
+        .isEqualTo(Optional.<Map.Entry<String, String>>empty());
+    assertThat(SonarComponentKeys.prefixesOf("sonar:project:[root]/Clazz.groovy", "/project/src/Clazz.groovy"))
+        .isEqualTo(Optional.of(Maps.immutableEntry("/project/src/", "sonar:project:[root]/")));
+  }
+
+  @Test
+  public void takesNoPrefixesOfKeysNotEndingLikeThePath() {
+    assertThat(SonarComponentKeys.prefixesOf("sonar:project:foo.bar.Clazz", "/project/src/foo/bar/Clazz.java"))
+        .isEqualTo(Optional.<Map.Entry<String, String>>empty());
+    assertThat(SonarComponentKeys.prefixesOf("src/Clazz.java", "/project/src/Clazz.java"))
+        .isEqualTo(Optional.of(Maps.immutableEntry("/project/src/", "src/")));
+  }
+
+  @Test
+  public void derivesTheKeyFromTheClosestDirectory() {
+    final Map<String, String> keyPrefixByPathPrefix = ImmutableMap.of(
+        "/project/", "sonar:project:",
+        "/project/module/", "sonar:project:module:"
+    );
+
+    assertThat(SonarComponentKeys.componentKeyOf("/project/src/Clazz.java", keyPrefixByPathPrefix))
+        .isEqualTo(Optional.of("sonar:project:src/Clazz.java"));
+    assertThat(SonarComponentKeys.componentKeyOf("/project/module/src/Clazz.java", keyPrefixByPathPrefix))
+        .isEqualTo(Optional.of("sonar:project:module:src/Clazz.java"));
+  }
+
+  @Test
+  public void derivesNoKeyOutsideOfTheKnownDirectories() {
+    assertThat(SonarComponentKeys.componentKeyOf("/other/Clazz.java", ImmutableMap.of("/project/", "sonar:project:")))
+        .isEqualTo(Optional.<String>empty());
+  }
+}
@@ -0,0 +1,148 @@
+package org.intellij.sonar.util;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import org.junit.Test;
+
+public class SonarComponentToFileIndexTest {
+
+  private static final List<String> FILE_PATHS = Arrays.asList(
+      "/project/src/test/testdata/java/OtherClass.java",
+      "/project/src/test/testdata/java/foo/bar/Clazz.java",
+      "/project/src/test/testdata/groovy/VeryBadClassRoot.groovy",
+      "/project/src/test/testdata/groovy/foo/bar/VeryBadClass.groovy",
+      "/project/src/test/testdata/php/Math.php",
+      "/project/src/test/testdata/php/Bar/Math4.php",
+      "/other/sonar:project:Clazz.java",
+      "/a.b/c.java"
+  );
+
+  private static final List<String> RESOURCE_KEYS = Arrays.asList(
+      null, "", " ", "sonar:project", "sonar", "sonar:project:sonar:project", "a:a"
+  );
+
+  private static final List<String> COMPONENTS = Arrays.asList(
+      null,
+      "",
+      "  ",
+      "sonar:project:src/test/testdata/java/OtherClass.java",
+      "sonar:project:java/foo/bar/Clazz.java",
+      "sonar:project:[root]/VeryBadClassRoot.groovy",
+      "sonar:project:[root]/foo/bar/VeryBadClass.groovy",
+      "sonar:project:foo.bar.Clazz",
+      "sonar:project:.OtherClass",
+      "sonar:project:[src].OtherClass",
+      "sonar:project:Math.php",
+      "sonar:project:Bar/Math4.php",
+      "sonar:project:[]Math.php",
+      "sonar:project:[a]Math.php]",
+      "sonar:project:x[a]y[b]Math4.php",
+      "sonar:project:Bar[]",
+      "sonar:project:]Bar/Math4.php",
+      "sonar:project:sonar:project:Clazz.java",
+      "sonar:project2:OtherClass.java",
+      "sonar:projectOtherClass.java",
+      "other:project:Clazz.java",
+      "sonar:project:",
+      "sonar:project:a.b.c",
+      ":Clazz.java",
+      "Clazz.java:",
+      "OtherClass.java",
+      "a:a:a:c.java",
+      "a:a:c.java"
+  );
+
+  @Test
+  public void findsTheFilesOfComponentsInTheRootDir() {
+    final SonarComponentToFileIndex index = new SonarComponentToFileIndex("sonar:project", FILE_PATHS);
+
+    assertThat(index.findFiles("sonar:project:[root]/VeryBadClassRoot.groovy"))
+        .containsOnly("/project/src/test/testdata/groovy/VeryBadClassRoot.groovy");
+  }
+
+  @Test
+  public void findsJavaClassesWithoutSuffix() {
+    final SonarComponentToFileIndex index = new SonarComponentToFileIndex("sonar:project", FILE_PATHS);
+
+    assertThat(index.findFiles("sonar:project:foo.bar.Clazz"))
+        .containsOnly("/project/src/test/testdata/java/foo/bar/Clazz.java");
+  }
+
+  @Test
+  public void findsNoFilesOfOtherResources() {
+    final SonarComponentToFileIndex index = new SonarComponentToFileIndex("sonar:project", FILE_PATHS);
+
+    assertThat(index.findFiles("other:project:Clazz.java")).isEmpty();
+  }
+
+  @Test
+  public void findsTheSameFilesAsRegularExpressions() {
+    for (String resourceKey : RESOURCE_KEYS) {
+      final SonarComponentToFileIndex index = new SonarComponentToFileIndex(resourceKey, FILE_PATHS);
+      final RegularExpressionIndex regularExpressionIndex = new RegularExpressionIndex(resourceKey, FILE_PATHS);
+      for (String component : COMPONENTS) {
+        assertThat(index.findFiles(component))
+            .as(resourceKey + " " + component)
+            .isEqualTo(regularExpressionIndex.findFiles(component));
+      }
+    }
+  }
+
+  /**
+   * the index as it was before parsing the components in place
+   */
+  private static class RegularExpressionIndex {
+
+    private static final Pattern COMPONENT_PREFIX = Pattern.compile("(?i)(.+:)(.+)");
+    private static final Pattern ROOT_DIR = Pattern.compile("\\[.+\\]");
+    private static final Pattern DOT = Pattern.compile("\\.");
+
+    private final String resourceKeyFromConfiguration;
+    private final Collection<String> fullFilePaths;
+
+    RegularExpressionIndex(String resourceKeyFromConfiguration, Collection<String> fullFilePaths) {
+      this.resourceKeyFromConfiguration = resourceKeyFromConfiguration;
+      this.fullFilePaths = fullFilePaths;
+    }
+
+    Set<String> findFiles(String componentFrom) {
+      if (isEmptyOrSpaces(componentFrom)) {
+        return Collections.emptySet();
+      }
+      if (!isEmptyOrSpaces(resourceKeyFromConfiguration) && !componentFrom.startsWith(resourceKeyFromConfiguration)) {
+        return Collections.emptySet();
+      }
+      final Set<String> files = new LinkedHashSet<>();
+      final String fileKeyFromComponent = isEmptyOrSpaces(resourceKeyFromConfiguration)
+          ? COMPONENT_PREFIX.matcher(componentFrom).replaceAll("$2")
+          : componentFrom.replace(resourceKeyFromConfiguration + ":", "");
+      addFilesEndingWith(fileKeyFromComponent, files);
+      final String normalizedFileKey = ROOT_DIR.matcher(fileKeyFromComponent).replaceAll("");
+      addFilesEndingWith(normalizedFileKey, files);
+      addFilesEndingWith(DOT.matcher(normalizedFileKey).replaceAll("/") + ".java", files);
+      return files;
+    }
+
+    private void addFilesEndingWith(String suffix, Set<String> files) {
+      fullFilePaths.stream()
+          .filter(fullFilePath -> fullFilePath.endsWith(suffix))
+          .sorted((path, otherPath) -> reverse(path).compareTo(reverse(otherPath)))
+          .forEach(files::add);
+    }
+
+    private static String reverse(String s) {
+      return new StringBuilder(s).reverse().toString();
+    }
+
+    private static boolean isEmptyOrSpaces(String s) {
+      return s == null || s.trim().isEmpty();
+    }
+  }
+}